@@ -9,7 +9,10 @@ import java.util.concurrent.TimeUnit;
 
 import clink.box.FileSendPacket;
 import clink.core.Connector;
+import clink.core.ConnectorConfig;
 import clink.core.IoContext;
+import clink.core.Packet;
+import clink.core.alloc.PooledIoArgsAllocator;
 import clink.core.ScheduleJob;
 import clink.core.schedule.IdleTimeoutScheduleJob;
 import clink.impl.IoSelectorProvider;
@@ -36,6 +39,16 @@ class Client {
                 //TODO：性能优化3（多线程任务窃取）
                 .ioProvider(new IoStealingSelectorProvider(3))
                 .scheduler(new SchedulerImpl(1))
+                .ioArgsAllocator(new PooledIoArgsAllocator())
+                .connectorConfig(ConnectorConfig.newBuilder()
+                        .readAhead(true)
+                        .sendBatch(true, 64 * 1024)
+                        .maxConcurrentSendPackets(8)
+                        .compactFrame(1024)
+                        .compress(512, false)
+                        .handshake(true, true)
+                        .largeFrame(4 * 1024 * 1024, Packet.TYPE_STREAM_FILE)
+                        .build())
                 .start();
 
         //文件缓存路径
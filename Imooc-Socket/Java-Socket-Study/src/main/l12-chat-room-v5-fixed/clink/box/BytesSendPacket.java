@@ -1,8 +1,10 @@
 package clink.box;
 
 import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 
 import clink.core.SendPacket;
+import clink.utils.Recycler;
 
 /**
  * @author Ztiany
@@ -11,9 +13,54 @@ import clink.core.SendPacket;
  */
 public class BytesSendPacket extends SendPacket<ByteArrayInputStream> {
 
-    private final byte[] mBytes;
+    // 每个线程最多缓存的包的数量
+    static final int MAX_POOLED_PER_THREAD = 256;
 
-    public BytesSendPacket( byte[] bytes) {
+    private static final Recycler<BytesSendPacket> RECYCLER = new Recycler<BytesSendPacket>(MAX_POOLED_PER_THREAD) {
+        @Override
+        protected BytesSendPacket newObject(Handle<BytesSendPacket> handle) {
+            return new BytesSendPacket(handle);
+        }
+    };
+
+    private byte[] mBytes;
+
+    // 对象池中创建的包回收时使用，其他的包为 null
+    private final Recycler.Handle<BytesSendPacket> handle;
+
+    /**
+     * 是否从对象池中获取，只有这样的包在发送完成后才会被回收
+     */
+    private boolean isPooled;
+
+    public BytesSendPacket(byte[] bytes) {
+        this.handle = null;
+        setBytes(bytes);
+    }
+
+    BytesSendPacket() {
+        this.handle = null;
+    }
+
+    private BytesSendPacket(Recycler.Handle<BytesSendPacket> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个包，发送完成后自动回收，调用者发送后不能再持有该包
+     */
+    public static BytesSendPacket obtain(byte[] bytes) {
+        BytesSendPacket packet = RECYCLER.get();
+        packet.markPooled();
+        packet.setBytes(bytes);
+        return packet;
+    }
+
+    final void markPooled() {
+        isPooled = true;
+    }
+
+    void setBytes(byte[] bytes) {
         this.length = bytes.length;
         mBytes = bytes;
     }
@@ -28,4 +75,32 @@ public class BytesSendPacket extends SendPacket<ByteArrayInputStream> {
         return new ByteArrayInputStream(mBytes);
     }
 
+    @Override
+    public ByteBuffer entityBuffer(long position, int length) {
+        return ByteBuffer.wrap(mBytes, (int) position, length);
+    }
+
+    @Override
+    public void recycle() {
+        if (release()) {
+            handle.recycle(this);
+        }
+    }
+
+    /**
+     * 清理包的状态
+     *
+     * @return 是否为对象池中获取的包，只有这样的包才需要回收
+     */
+    final boolean release() {
+        if (!isPooled) {
+            return false;
+        }
+        isPooled = false;
+        mBytes = null;
+        length = 0;
+        reset();
+        return true;
+    }
+
 }
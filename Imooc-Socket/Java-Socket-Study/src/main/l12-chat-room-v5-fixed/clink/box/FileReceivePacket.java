@@ -3,6 +3,9 @@ package clink.box;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import clink.core.ReceivePacket;
 
@@ -39,11 +42,36 @@ public class FileReceivePacket extends ReceivePacket<FileOutputStream, File> {
     @Override
     protected FileOutputStream createStream() {
         try {
-            return new FileOutputStream(mFile);
+            FileOutputStream stream = new FileOutputStream(mFile);
+            preallocate(stream.getChannel());
+            return stream;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * 按包的长度预先扩展文件，避免接收过程中文件不断增长
+     */
+    private void preallocate(FileChannel channel) {
+        if (length <= 0) {
+            return;
+        }
+        try {
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 实体帧按位置直接写入文件
+     */
+    @Override
+    public FileChannel fileChannel() {
+        FileOutputStream stream = open();
+        return stream == null ? null : stream.getChannel();
+    }
+
 }
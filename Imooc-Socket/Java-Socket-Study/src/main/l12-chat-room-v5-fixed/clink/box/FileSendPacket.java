@@ -3,6 +3,7 @@ package clink.box;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.nio.channels.FileChannel;
 
 import clink.core.SendPacket;
 
@@ -18,6 +19,7 @@ public class FileSendPacket extends SendPacket<FileInputStream> {
     public FileSendPacket(File file) {
         mFile = file;
         this.length = mFile.length();
+        setPriority(PRIORITY_LOW);
     }
 
     @Override
@@ -35,5 +37,14 @@ public class FileSendPacket extends SendPacket<FileInputStream> {
         return null;
     }
 
+    /**
+     * 文件数据通过 transferTo 直接写出，不经过用户态的缓冲区
+     */
+    @Override
+    public FileChannel fileChannel() {
+        FileInputStream stream = open();
+        return stream == null ? null : stream.getChannel();
+    }
+
 
 }
@@ -20,6 +20,7 @@ public class StreamDirectSendPacket extends SendPacket<InputStream> {
         this.inputStream = inputStream;
         // 长度不固定，所以为最大值。
         this.length = MAX_PACKET_SIZE;
+        setPriority(PRIORITY_LOW);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package clink.box;
 
+import clink.utils.Recycler;
+
 /**
  * 字符串包
  *
@@ -9,6 +11,16 @@ package clink.box;
  */
 public class StringSendPacket extends BytesSendPacket {
 
+    private static final Recycler<StringSendPacket> RECYCLER = new Recycler<StringSendPacket>(MAX_POOLED_PER_THREAD) {
+        @Override
+        protected StringSendPacket newObject(Handle<StringSendPacket> handle) {
+            return new StringSendPacket(handle);
+        }
+    };
+
+    // 对象池中创建的包回收时使用，其他的包为 null
+    private final Recycler.Handle<StringSendPacket> handle;
+
     /**
      * 字符串发送时就是Byte 数组，所以直接得到 Byte 数组，并按照Byte的发送方式发送即可
      *
@@ -16,6 +28,23 @@ public class StringSendPacket extends BytesSendPacket {
      */
     public StringSendPacket(String send) {
         super(send.getBytes());
+        this.handle = null;
+        setPriority(PRIORITY_HIGH);
+    }
+
+    private StringSendPacket(Recycler.Handle<StringSendPacket> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个字符串包，发送完成后自动回收，调用者发送后不能再持有该包
+     */
+    public static StringSendPacket obtain(String send) {
+        StringSendPacket packet = RECYCLER.get();
+        packet.markPooled();
+        packet.setBytes(send.getBytes());
+        packet.setPriority(PRIORITY_HIGH);
+        return packet;
     }
 
     @Override
@@ -23,4 +52,11 @@ public class StringSendPacket extends BytesSendPacket {
         return TYPE_MEMORY_STRING;
     }
 
+    @Override
+    public void recycle() {
+        if (release()) {
+            handle.recycle(this);
+        }
+    }
+
 }
@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.UUID;
 
 import clink.box.*;
+import clink.core.alloc.ReceiveBufferPolicy;
 import clink.impl.SocketChannelAdapter;
 import clink.impl.async.AsyncReceiveDispatcher;
 import clink.impl.async.AsyncSendDispatcher;
@@ -51,6 +52,11 @@ public abstract class Connector implements Closeable {
      */
     private ReceiveDispatcher receiveDispatcher;
 
+    /**
+     * 接收缓冲区大小策略
+     */
+    private ReceiveBufferPolicy receiveBufferPolicy;
+
     private final List<ScheduleJob> mScheduleJobs = new ArrayList<>(4);
 
     private final SocketChannelAdapter.OnChannelStatusChangedListener onChannelStatusChangedListener = new SocketChannelAdapter.OnChannelStatusChangedListener() {
@@ -66,6 +72,16 @@ public abstract class Connector implements Closeable {
     }
 
     public void setup(SocketChannel socketChannel) throws IOException {
+        setup(socketChannel, IoContext.get().getConnectorConfig());
+    }
+
+    /**
+     * 使用指定的配置初始化连接
+     *
+     * @param socketChannel 通道
+     * @param config        连接配置
+     */
+    public void setup(SocketChannel socketChannel, ConnectorConfig config) throws IOException {
         this.channel = socketChannel;
 
         IoContext ioContext = IoContext.get();
@@ -79,22 +95,48 @@ public abstract class Connector implements Closeable {
         this.sender = socketChannelAdapter;
         this.receiver = socketChannelAdapter;
 
-        sendDispatcher = new AsyncSendDispatcher(sender);
-        receiveDispatcher = new AsyncReceiveDispatcher(receiver, receivePacketCallback);
+        sendDispatcher = new AsyncSendDispatcher(sender, ioContext.getIoArgsAllocator(), config, ioContext.scheduler(),
+                writabilityListener);
+        receiveBufferPolicy = config.createReceiveBufferPolicy();
+        receiveDispatcher = new AsyncReceiveDispatcher(receiver, receivePacketCallback,
+                ioContext.getIoArgsAllocator(), receiveBufferPolicy, config.isReadAhead(),
+                config.getMaxReceiveBacklogPackets(), config.getMaxReceiveBacklogBytes());
 
         // 立即启动数据接收接收
         receiveDispatcher.start();
+
+        if (config.isHandshake() && config.isHandshakeInitiator()) {
+            // 由客户端发起，握手帧是连接的第一帧，服务端收到后再回复
+            sendDispatcher.sendHandshake();
+        }
     }
 
-    public void send(String message) {
+    /**
+     * @return false 表示发送队列已满，消息被丢弃或者连接被关闭
+     */
+    public boolean send(String message) {
         if (message == null) {
-            return;
+            return false;
         }
-        sendDispatcher.send(new StringSendPacket(message));
+        return sendDispatcher.send(StringSendPacket.obtain(message));
+    }
+
+    public boolean send(SendPacket packet) {
+        return sendDispatcher.send(packet);
+    }
+
+    /**
+     * 发送队列的数据量是否低于高水位线，群发等场景可以跳过不可写的连接
+     */
+    public boolean isWritable() {
+        return sendDispatcher.isWritable();
     }
 
-    public void send(SendPacket packet) {
-        sendDispatcher.send(packet);
+    /**
+     * 因为发送队列溢出而被丢弃的包的数量，用于统计
+     */
+    public long getSendOverflowDropCount() {
+        return sendDispatcher.getOverflowDropCount();
     }
 
     /**
@@ -105,10 +147,11 @@ public abstract class Connector implements Closeable {
             // 已改变直接返回
             return;
         }
-        // 老的停止
+        // 老的停止，其持有的缓冲区在正在进行的读取结束后释放
         receiveDispatcher.stop();
+        CloseUtils.close(receiveDispatcher);
         // 构建新的接收者调度器
-        BridgeSocketDispatcher dispatcher = new BridgeSocketDispatcher(receiver);
+        BridgeSocketDispatcher dispatcher = new BridgeSocketDispatcher(receiver, IoContext.get().getIoArgsAllocator());
         receiveDispatcher = dispatcher;
         // 启动
         dispatcher.start();
@@ -186,6 +229,24 @@ public abstract class Connector implements Closeable {
         return Math.max(sender.getLastWriteTime(), receiver.getLastReadTime());
     }
 
+    /**
+     * 获取当前的接收缓冲区大小，用于统计
+     *
+     * @return 下一次读取使用的缓冲区大小
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferPolicy == null ? 0 : receiveBufferPolicy.guess();
+    }
+
+    /**
+     * 获取当前正在接收的包的数量，用于统计，桥接模式下为 0
+     */
+    public int getReceivingPacketCount() {
+        ReceiveDispatcher dispatcher = receiveDispatcher;
+        return dispatcher instanceof AsyncReceiveDispatcher ?
+                ((AsyncReceiveDispatcher) dispatcher).getReceivingPacketCount() : 0;
+    }
+
     @Override
     public void close() throws IOException {
         synchronized (mScheduleJobs) {
@@ -202,6 +263,13 @@ public abstract class Connector implements Closeable {
         channel.close();
     }
 
+    private final SendDispatcher.WritabilityListener writabilityListener = new SendDispatcher.WritabilityListener() {
+        @Override
+        public void onWritabilityChanged(boolean isWritable) {
+            Connector.this.onWritabilityChanged(isWritable);
+        }
+    };
+
     private final ReceiveDispatcher.ReceivePacketCallback receivePacketCallback = new ReceiveDispatcher.ReceivePacketCallback() {
 
         @Override
@@ -211,33 +279,65 @@ public abstract class Connector implements Closeable {
 
         @Override
         public ReceivePacket<?, ?> onArrivedNewPacket(byte type, long length, byte[] headerInfo) {
+            if (!isAcceptPacket(type, length, headerInfo)) {
+                return null;
+            }
             switch (type) {
                 case Packet.TYPE_MEMORY_BYTES://字节流
                     return new BytesReceivePacket(length);
                 case Packet.TYPE_MEMORY_STRING://字符串
                     return new StringReceivePacket(length);
                 case Packet.TYPE_STREAM_FILE://文件
-                    return new FileReceivePacket(length, createNewReceiveFile(length, headerInfo));
+                    File file = createNewReceiveFile(length, headerInfo);
+                    return file == null ? null : new FileReceivePacket(length, file);
                 case Packet.TYPE_STREAM_DIRECT://直流
-                    return new StreamDirectReceivePacket(createNewReceiveDirectOutputStream(length, headerInfo), length);
+                    OutputStream stream = createNewReceiveDirectOutputStream(length, headerInfo);
+                    return stream == null ? null : new StreamDirectReceivePacket(stream, length);
                 default:
                     throw new UnsupportedOperationException("Unsupported packet type:" + type);
             }
         }
 
+        @Override
+        public void onRejectPacket(short identifier) {
+            sendDispatcher.sendReject(identifier);
+        }
+
+        @Override
+        public void onReceivedReject(short identifier) {
+            sendDispatcher.onPacketRejected(identifier);
+        }
+
         @Override
         public void onReceivedHeartbeat() {
             System.out.println(key + ": [Heartbeat]");
         }
 
+        @Override
+        public void onReceivedHandshake(byte version, int features, int maxFrameLength) {
+            sendDispatcher.onPeerHandshake(version, features, maxFrameLength);
+        }
+
     };
 
+    /**
+     * 是否接收一个新的包，拒绝时会通知对方停止发送（对方不支持时只丢弃其数据），默认全部接收。
+     *
+     * @param type       类型
+     * @param length     长度
+     * @param headerInfo 额外信息
+     * @return false 表示拒绝接收，如包太大
+     */
+    protected boolean isAcceptPacket(byte type, long length, byte[] headerInfo) {
+        return true;
+    }
+
     /**
      * 当接收包是文件时，需要得到一份空的文件用以数据存储。
      *
      * @param length     长度
      * @param headerInfo 额外信息
-     * @return 新的文件
+     * @return 新的文件，返回 null 表示拒绝接收，如磁盘空间不足
      */
     protected abstract File createNewReceiveFile(long length, byte[] headerInfo);
 
@@ -247,7 +347,7 @@ public abstract class Connector implements Closeable {
      *
      * @param length     长度
      * @param headerInfo 额外信息
-     * @return 输出流
+     * @return 输出流，返回 null 表示拒绝接收
      */
     protected abstract OutputStream createNewReceiveDirectOutputStream(long length, byte[] headerInfo);
 
@@ -258,6 +358,36 @@ public abstract class Connector implements Closeable {
 
     }
 
+    /**
+     * 在分发线程中处理收到的包，处理完成之前计入接收的积压，积压太多时暂停读取，
+     * 见 {@link ConnectorConfig.Builder#receiveBacklog(int, long)}
+     *
+     * @param packet   收到的包
+     * @param runnable 处理包的任务
+     */
+    protected void delivery(ReceivePacket packet, Runnable runnable) {
+        long length = packet.getLength();
+        // 桥接后原来的调度器已经关闭，使用当时的调度器结束积压
+        ReceiveDispatcher dispatcher = receiveDispatcher;
+        dispatcher.onDeliveryPending(length);
+        IoContext.get().scheduler().delivery(() -> {
+            try {
+                runnable.run();
+            } finally {
+                dispatcher.onDeliveryCompleted(length);
+            }
+        });
+    }
+
+    /**
+     * 发送队列的可写状态变化时回调，可能在任意线程
+     *
+     * @param isWritable 当前是否可写
+     */
+    protected void onWritabilityChanged(boolean isWritable) {
+
+    }
+
     public UUID getKey() {
         return key;
     }
@@ -0,0 +1,392 @@
+package clink.core;
+
+import java.util.function.Supplier;
+
+import clink.core.alloc.AdaptiveReceiveBufferPolicy;
+import clink.core.alloc.ReceiveBufferPolicy;
+
+/**
+ * 连接的配置，通过 {@link IoContext.StartedBoot#connectorConfig(ConnectorConfig)} 设置全局默认值，
+ * 也可以在 {@link Connector#setup(java.nio.channels.SocketChannel, ConnectorConfig)} 时为单个连接指定。
+ */
+public class ConnectorConfig {
+
+    /**
+     * 默认配置
+     */
+    public static final ConnectorConfig DEFAULT = newBuilder().build();
+
+    // 非批量发送时的缓冲区大小
+    private static final int DEFAULT_FRAME_BUFFER_SIZE = 256;
+
+    private final Supplier<ReceiveBufferPolicy> receiveBufferPolicyFactory;
+    private final boolean isReadAhead;
+    private final boolean isSendBatch;
+    private final int sendBufferSize;
+    private final int flushThreshold;
+    private final long maxFlushLatency;
+    private final int maxConcurrentSendPackets;
+    private final int compactFrameLength;
+    private final int compressThreshold;
+    private final boolean isCompressFile;
+    private final int largeFrameLength;
+    private final boolean[] largeFramePacketTypes;
+    private final boolean isHandshake;
+    private final boolean isHandshakeInitiator;
+    private final long sendQueueLowWatermark;
+    private final long sendQueueHighWatermark;
+    private final SendOverflowPolicy sendOverflowPolicy;
+    private final int maxReceiveBacklogPackets;
+    private final long maxReceiveBacklogBytes;
+
+    private ConnectorConfig(Builder builder) {
+        this.receiveBufferPolicyFactory = builder.receiveBufferPolicyFactory;
+        this.isReadAhead = builder.isReadAhead;
+        this.isSendBatch = builder.isSendBatch;
+        this.sendBufferSize = builder.sendBufferSize;
+        this.flushThreshold = builder.flushThreshold;
+        this.maxFlushLatency = builder.maxFlushLatency;
+        this.maxConcurrentSendPackets = builder.maxConcurrentSendPackets;
+        this.compactFrameLength = builder.compactFrameLength;
+        this.compressThreshold = builder.compressThreshold;
+        this.isCompressFile = builder.isCompressFile;
+        this.largeFrameLength = builder.largeFrameLength;
+        this.largeFramePacketTypes = builder.largeFramePacketTypes;
+        this.isHandshake = builder.isHandshake;
+        this.isHandshakeInitiator = builder.isHandshakeInitiator;
+        this.sendQueueLowWatermark = builder.sendQueueLowWatermark;
+        this.sendQueueHighWatermark = builder.sendQueueHighWatermark;
+        this.sendOverflowPolicy = builder.sendOverflowPolicy;
+        this.maxReceiveBacklogPackets = builder.maxReceiveBacklogPackets;
+        this.maxReceiveBacklogBytes = builder.maxReceiveBacklogBytes;
+    }
+
+    /**
+     * 为一个连接创建接收缓冲区大小策略，每个连接一份
+     */
+    public ReceiveBufferPolicy createReceiveBufferPolicy() {
+        return receiveBufferPolicyFactory.get();
+    }
+
+    /**
+     * 是否使用预读模式接收数据
+     */
+    public boolean isReadAhead() {
+        return isReadAhead;
+    }
+
+    /**
+     * 是否批量发送
+     */
+    public boolean isSendBatch() {
+        return isSendBatch;
+    }
+
+    /**
+     * 发送缓冲区大小，批量发送时每次写出的最大数据量
+     */
+    public int getSendBufferSize() {
+        return isSendBatch ? sendBufferSize : DEFAULT_FRAME_BUFFER_SIZE;
+    }
+
+    public int getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * 最大发送延迟，单位毫秒
+     */
+    public long getMaxFlushLatency() {
+        return maxFlushLatency;
+    }
+
+    /**
+     * 最多同时发送的包的数量
+     */
+    public int getMaxConcurrentSendPackets() {
+        return maxConcurrentSendPackets;
+    }
+
+    /**
+     * 使用紧凑帧发送的最大包长度，0 表示不使用
+     */
+    public int getCompactFrameLength() {
+        return compactFrameLength;
+    }
+
+    /**
+     * 压缩发送的最小包长度，0 表示不压缩
+     */
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * 文件包是否也压缩发送
+     */
+    public boolean isCompressFile() {
+        return isCompressFile;
+    }
+
+    /**
+     * 获取某种类型的包的实体帧的最大长度，未开启大帧时为 {@link Frame#MAX_CAPACITY}
+     *
+     * @param packetType 包的类型
+     */
+    public int getMaxEntityFrameLength(byte packetType) {
+        if (packetType >= 0 && packetType < largeFramePacketTypes.length && largeFramePacketTypes[packetType]) {
+            return largeFrameLength;
+        }
+        return Frame.MAX_CAPACITY;
+    }
+
+    /**
+     * 是否在连接建立时握手
+     */
+    public boolean isHandshake() {
+        return isHandshake;
+    }
+
+    /**
+     * 是否由本端发起握手，否则收到对方的握手后才回复
+     */
+    public boolean isHandshakeInitiator() {
+        return isHandshakeInitiator;
+    }
+
+    /**
+     * 发送队列是否有上限
+     */
+    public boolean isSendQueueBounded() {
+        return sendQueueHighWatermark != Long.MAX_VALUE;
+    }
+
+    /**
+     * 发送队列的低水位线，数据量降到该值以下时连接重新变为可写
+     */
+    public long getSendQueueLowWatermark() {
+        return sendQueueLowWatermark;
+    }
+
+    /**
+     * 发送队列的高水位线，数据量达到该值时连接变为不可写
+     */
+    public long getSendQueueHighWatermark() {
+        return sendQueueHighWatermark;
+    }
+
+    public SendOverflowPolicy getSendOverflowPolicy() {
+        return sendOverflowPolicy;
+    }
+
+    /**
+     * 接收后还没有处理完成的包的数量上限，0 表示不限制
+     */
+    public int getMaxReceiveBacklogPackets() {
+        return maxReceiveBacklogPackets;
+    }
+
+    /**
+     * 接收后还没有处理完成的数据量上限，0 表示不限制
+     */
+    public long getMaxReceiveBacklogBytes() {
+        return maxReceiveBacklogBytes;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private Supplier<ReceiveBufferPolicy> receiveBufferPolicyFactory = AdaptiveReceiveBufferPolicy::new;
+        private boolean isReadAhead;
+        private boolean isSendBatch;
+        private int sendBufferSize = 64 * 1024;
+        private int flushThreshold;
+        private long maxFlushLatency;
+        private int maxConcurrentSendPackets = 1;
+        private int compactFrameLength;
+        private int compressThreshold;
+        private boolean isCompressFile;
+        private int largeFrameLength = Frame.MAX_CAPACITY;
+        private boolean[] largeFramePacketTypes = new boolean[Packet.TYPE_STREAM_DIRECT + 1];
+        private boolean isHandshake;
+        private boolean isHandshakeInitiator;
+        private long sendQueueLowWatermark = Long.MAX_VALUE;
+        private long sendQueueHighWatermark = Long.MAX_VALUE;
+        private SendOverflowPolicy sendOverflowPolicy = SendOverflowPolicy.BLOCK;
+        private int maxReceiveBacklogPackets;
+        private long maxReceiveBacklogBytes;
+
+        private Builder() {
+        }
+
+        /**
+         * 设置接收缓冲区大小策略的创建方式，默认为 {@link AdaptiveReceiveBufferPolicy}
+         */
+        public Builder receiveBufferPolicy(Supplier<ReceiveBufferPolicy> factory) {
+            this.receiveBufferPolicyFactory = factory;
+            return this;
+        }
+
+        /**
+         * 设置是否使用预读模式接收数据，默认关闭。
+         * 关闭时每一帧先读 6 字节帧头再读帧体，至少需要两次读取；开启后一次读取尽可能多的数据，并从中解析出多个帧，适合大量小消息的场景。
+         */
+        public Builder readAhead(boolean isReadAhead) {
+            this.isReadAhead = isReadAhead;
+            return this;
+        }
+
+        /**
+         * 设置是否批量发送，默认关闭。
+         * 关闭时每一帧单独通过 256 字节的缓冲区写出，实体帧缩短到缓冲区能够容纳的长度；开启后连续把多个帧、多个包填充到一个大小为 bufferSize 的缓冲区，填满或者没有数据时再写出。
+         */
+        public Builder sendBatch(boolean isSendBatch, int bufferSize) {
+            if (bufferSize <= Frame.FRAME_HEADER_LENGTH) {
+                // 至少还能容纳 1 字节的帧体，实体帧才能缩短到一次写出
+                throw new IllegalArgumentException("bufferSize must be > " + Frame.FRAME_HEADER_LENGTH);
+            }
+            this.isSendBatch = isSendBatch;
+            this.sendBufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * 设置发送阈值与最大延迟，空闲时队列中的数据量不足 threshold 字节，则最多等待 maxLatency 毫秒后再发送，
+         * 用于合并更多的小包。默认不等待。
+         */
+        public Builder flush(int threshold, long maxLatency) {
+            this.flushThreshold = threshold;
+            this.maxFlushLatency = maxLatency;
+            return this;
+        }
+
+        /**
+         * 设置最多同时发送的包的数量，默认为 1，即一个包发送完成后才发送下一个包。
+         * 大于 1 时多个包的帧轮流发送，大文件发送期间的小消息不需要等待文件发送完成。
+         * 大于 254 时需要开启 {@link #handshake(boolean, boolean)} 并且对方支持宽标识，否则最多同时发送 254 个包。
+         */
+        public Builder maxConcurrentSendPackets(int count) {
+            if (count < 1 || count > Frame.MAX_WIDE_IDENTIFIER - 1) {
+                throw new IllegalArgumentException("count must be between 1 and " + (Frame.MAX_WIDE_IDENTIFIER - 1));
+            }
+            this.maxConcurrentSendPackets = count;
+            return this;
+        }
+
+        /**
+         * 设置不大于 maxPacketLength 的字符串、字节包使用一个紧凑帧发送，默认为 0，即不使用。
+         * 接收方总是能够解析紧凑帧，但旧版本的对端不能，所以只有确定对端支持时才开启，或者同时开启 {@link #handshake(boolean, boolean)}。
+         */
+        public Builder compactFrame(int maxPacketLength) {
+            if (maxPacketLength < 0 || maxPacketLength >= Frame.MAX_CAPACITY) {
+                throw new IllegalArgumentException("maxPacketLength must be between 0 and " + (Frame.MAX_CAPACITY - 1));
+            }
+            this.compactFrameLength = maxPacketLength;
+            return this;
+        }
+
+        /**
+         * 设置长度不小于 minPacketLength 的字符串、字节包压缩发送，isCompressFile 为 true 时文件包也压缩，默认为 0，即不压缩。
+         * 压缩的包不会使用紧凑帧发送，文件压缩后不能再使用 transferTo 直接发送。接收方总是能够解压，但旧版本的对端不能，所以只有确定对端支持时才开启，或者同时开启 {@link #handshake(boolean, boolean)}。
+         */
+        public Builder compress(int minPacketLength, boolean isCompressFile) {
+            if (minPacketLength < 0) {
+                throw new IllegalArgumentException("minPacketLength must be >= 0");
+            }
+            this.compressThreshold = minPacketLength;
+            this.isCompressFile = isCompressFile;
+            return this;
+        }
+
+        /**
+         * 设置指定类型的包使用大的实体帧发送，单帧最大 maxFrameLength 字节，默认不使用。
+         * 大帧减少了帧的数量以及每一帧的处理开销，适合大文件的传输，但是一帧开始发送后必须发送完成，其间其他包的帧需要等待，
+         * 所以交互消息的类型不应该使用大帧。接收方总是能够解析大帧，但旧版本的对端不能，所以只有确定对端支持时才开启，或者同时开启 {@link #handshake(boolean, boolean)}。
+         *
+         * @param maxFrameLength 单帧的最大长度，不大于 {@link Frame#MAX_SCALED_CAPACITY}
+         * @param packetTypes    使用大帧的包的类型，如 {@link Packet#TYPE_STREAM_FILE}
+         */
+        public Builder largeFrame(int maxFrameLength, byte... packetTypes) {
+            if (maxFrameLength < Frame.MAX_CAPACITY || maxFrameLength > Frame.MAX_SCALED_CAPACITY) {
+                throw new IllegalArgumentException("maxFrameLength must be between " + Frame.MAX_CAPACITY
+                        + " and " + Frame.MAX_SCALED_CAPACITY);
+            }
+            boolean[] types = new boolean[Packet.TYPE_STREAM_DIRECT + 1];
+            for (byte type : packetTypes) {
+                if (type < 0 || type >= types.length) {
+                    throw new IllegalArgumentException("Unsupported packet type:" + type);
+                }
+                types[type] = true;
+            }
+            this.largeFrameLength = maxFrameLength;
+            this.largeFramePacketTypes = types;
+            return this;
+        }
+
+        /**
+         * 设置是否在连接建立时握手，默认关闭。
+         * 开启后双方交换协议版本、支持的特性以及能够接收的单帧最大长度，紧凑帧、压缩、大帧、拒绝帧只有在对方支持时才使用，
+         * 握手完成之前以及对方不握手时使用原始的帧格式。
+         * <p>
+         * 握手由客户端发起（isInitiator 为 true），服务端（isInitiator 为 false）收到握手后才回复，
+         * 没有收到握手的连接一直使用原始的帧格式，所以升级后的服务端仍然可以与旧版本的客户端通信。
+         * 旧版本的服务端不认识握手帧，所以先升级服务端，再开启客户端的握手。
+         *
+         * @param isInitiator 是否由本端发起握手，客户端为 true，服务端为 false
+         */
+        public Builder handshake(boolean isHandshake, boolean isInitiator) {
+            this.isHandshake = isHandshake;
+            this.isHandshakeInitiator = isInitiator;
+            return this;
+        }
+
+        /**
+         * 设置发送队列的上限，默认没有上限。
+         * 只统计字符串、字节包的长度，从加入队列开始到发送完成为止，文件与直流包不占用内存所以不统计。
+         * 数据量达到 highWatermark 时连接变为不可写，降到 lowWatermark 以下时恢复可写，
+         * 可写时总是接收新的包，不可写时按照 policy 处理新的包。
+         */
+        public Builder sendQueue(long lowWatermark, long highWatermark, SendOverflowPolicy policy) {
+            if (highWatermark <= 0) {
+                throw new IllegalArgumentException("highWatermark must be > 0");
+            }
+            if (lowWatermark < 0 || lowWatermark > highWatermark) {
+                throw new IllegalArgumentException("lowWatermark must be between 0 and highWatermark");
+            }
+            if (policy == null) {
+                throw new IllegalArgumentException("policy must not be null");
+            }
+            this.sendQueueLowWatermark = lowWatermark;
+            this.sendQueueHighWatermark = highWatermark;
+            this.sendOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 设置接收的积压上限，默认不限制。
+         * 通过 {@link Connector#delivery(ReceivePacket, Runnable)} 交给分发线程处理的包，处理完成之前计入积压，
+         * 积压的包达到 maxPackets 个或者 maxBytes 字节时暂停读取，都降到上限的一半以下时恢复。
+         * 暂停期间对方的数据留在 TCP 的缓冲区中，窗口满了之后对方就无法继续发送。
+         * 已经读到的数据仍会全部解析，所以积压最多再超出一次读取中包含的包。
+         *
+         * @param maxPackets 积压的包的数量上限，0 表示不限制
+         * @param maxBytes   积压的数据量上限，0 表示不限制
+         */
+        public Builder receiveBacklog(int maxPackets, long maxBytes) {
+            if (maxPackets < 0 || maxBytes < 0) {
+                throw new IllegalArgumentException("maxPackets and maxBytes must be >= 0");
+            }
+            this.maxReceiveBacklogPackets = maxPackets;
+            this.maxReceiveBacklogBytes = maxBytes;
+            return this;
+        }
+
+        public ConnectorConfig build() {
+            return new ConnectorConfig(this);
+        }
+    }
+
+}
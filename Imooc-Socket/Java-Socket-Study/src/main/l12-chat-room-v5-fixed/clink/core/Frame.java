@@ -17,7 +17,7 @@ public abstract class Frame {
         帧类型：一个字节
         帧标志信息：一个字节，扩展用
         对应包唯一标识：一个字节
-        预留空间：一个字节
+        对应包唯一标识高位：一个字节，握手协商使用宽标识后才会使用，否则为 0
         数据区：可用空间为出去以上数据的剩余空间
      */
 
@@ -25,21 +25,51 @@ public abstract class Frame {
     public static final int FRAME_HEADER_LENGTH = 6;
     // 单帧最大容量 64KB，帧最接近底层的数据，每一帧的数据量也较小。一个包由一个头帧和若干个实体帧组成。
     public static final int MAX_CAPACITY = 64 * 1024 - 1;//2^16 -1
+    // 包的唯一标识的最大值，标识范围为 [1, MAX_IDENTIFIER]
+    public static final int MAX_IDENTIFIER = 255;
+    // 使用宽标识时唯一标识的最大值，标识范围为 [1, MAX_WIDE_IDENTIFIER]
+    public static final int MAX_WIDE_IDENTIFIER = Short.MAX_VALUE;
 
     // Packet头信息帧
     public static final byte TYPE_PACKET_HEADER = 11;
     // Packet数据分片信息帧
     public static final byte TYPE_PACKET_ENTITY = 12;
+    // 紧凑帧，一帧携带一个完整的小包：包类型与实体数据
+    public static final byte TYPE_PACKET_COMPACT = 13;
 
     // 指令-发送取消
     public static final byte TYPE_COMMAND_SEND_CANCEL = 41;
     // 指令-接受拒绝
     public static final byte TYPE_COMMAND_RECEIVE_REJECT = 42;
+    // 指令-握手，携带协议版本、支持的特性与能够接收的单帧最大长度
+    public static final byte TYPE_COMMAND_HANDSHAKE = 43;
     //心跳
     public static final byte TYPE_COMMAND_HEARTBEAT = 81;
 
     // Flag标记
     public static final byte FLAG_NONE = 0;
+    // 包的实体数据经过压缩，头帧与实体帧都会携带
+    public static final byte FLAG_COMPRESSED = 0x01;
+    // 帧的长度以 LENGTH_SCALE_UNIT 为单位，只用于大的实体帧，帧头格式不变
+    public static final byte FLAG_LENGTH_SCALED = 0x02;
+
+    // 按单位计算长度时，单帧最大容量 64MB
+    public static final int LENGTH_SCALE_SHIFT = 10;
+    public static final int LENGTH_SCALE_UNIT = 1 << LENGTH_SCALE_SHIFT;
+    public static final int MAX_SCALED_CAPACITY = MAX_CAPACITY << LENGTH_SCALE_SHIFT;
+
+    // 协议版本，握手时发送
+    public static final byte PROTOCOL_VERSION = 1;
+
+    // 握手协商的特性，对端支持时才使用
+    public static final int FEATURE_COMPACT_FRAME = 1;
+    public static final int FEATURE_COMPRESS = 1 << 1;
+    public static final int FEATURE_LARGE_FRAME = 1 << 2;
+    public static final int FEATURE_WIDE_IDENTIFIER = 1 << 3;
+    public static final int FEATURE_RECEIVE_REJECT = 1 << 4;
+    // 当前版本支持的全部特性
+    public static final int FEATURES_SUPPORTED = FEATURE_COMPACT_FRAME | FEATURE_COMPRESS | FEATURE_LARGE_FRAME
+            | FEATURE_WIDE_IDENTIFIER | FEATURE_RECEIVE_REJECT;
 
     // 头部6字节固定
     protected final byte[] header = new byte[FRAME_HEADER_LENGTH];
@@ -51,12 +81,35 @@ public abstract class Frame {
      * @param identifier 一个包的多个帧具有相同的 identifier
      */
     public Frame(int length, byte type, byte flag, short identifier) {
-        if (length < 0 || length > MAX_CAPACITY) {
+        initHeader(length, type, flag, identifier);
+    }
+
+    public Frame(byte[] header) {
+        System.arraycopy(header, 0, this.header, 0, FRAME_HEADER_LENGTH);
+    }
+
+    /**
+     * 用于可复用的帧，使用前需要调用 {@link #initHeader(int, byte, byte, short)}
+     */
+    protected Frame() {
+    }
+
+    /**
+     * 初始化帧头
+     */
+    protected void initHeader(int length, byte type, byte flag, short identifier) {
+        if ((flag & FLAG_LENGTH_SCALED) != 0) {
+            if (length < 0 || length > MAX_SCALED_CAPACITY || length % LENGTH_SCALE_UNIT != 0) {
+                throw new RuntimeException("The scaled Body length of a single frame should be a multiple of " + LENGTH_SCALE_UNIT
+                        + " and not greater than " + MAX_SCALED_CAPACITY);
+            }
+            length >>= LENGTH_SCALE_SHIFT;
+        } else if (length < 0 || length > MAX_CAPACITY) {
             throw new RuntimeException("The Body length of a single frame should be between 0 and " + MAX_CAPACITY);
         }
 
-        if (identifier < 1 || identifier > 255) {
-            throw new RuntimeException("The Body identifier of a single frame should be between 1 and 255");
+        if (identifier < 1 || identifier > MAX_WIDE_IDENTIFIER) {
+            throw new RuntimeException("The Body identifier of a single frame should be between 1 and " + MAX_WIDE_IDENTIFIER);
         }
 
         // 00000000 00000000 00000000 01000000
@@ -67,23 +120,23 @@ public abstract class Frame {
         header[3] = flag;
 
         header[4] = (byte) identifier;//标记
-        header[5] = 0;//预留空间
-    }
-
-    public Frame(byte[] header) {
-        System.arraycopy(header, 0, this.header, 0, FRAME_HEADER_LENGTH);
+        header[5] = (byte) (identifier >> 8);//标记高位，不大于 MAX_IDENTIFIER 时为 0
     }
 
     /**
      * 获取Body的长度
      *
-     * @return 当前帧Body总长度[0~MAX_CAPACITY]
+     * @return 当前帧Body总长度[0~MAX_CAPACITY]，带有 {@link #FLAG_LENGTH_SCALED} 时为 [0~MAX_SCALED_CAPACITY]
      */
     public int getBodyLength() {
         //& 0xFF 的原因，复数是采用反码存储的。
         //如果存在负数，则 (int)byte 会导致高位全部转换为 1111。比如
         //byte 类型的 -1 强转为 int，二进制为 11111111 11111111 11111111 11111111，因此要去掉高位的 1 则应该 &FF。
-        return (((int) header[0] & 0xFF) << 8) | (((int) header[1] & 0xFF));
+        int length = (((int) header[0] & 0xFF) << 8) | (((int) header[1] & 0xFF));
+        if ((header[3] & FLAG_LENGTH_SCALED) != 0) {
+            length <<= LENGTH_SCALE_SHIFT;
+        }
+        return length;
     }
 
     /**
@@ -107,10 +160,10 @@ public abstract class Frame {
     /**
      * 获取Body的唯一标志
      *
-     * @return 标志[0~255]
+     * @return 标志[0~MAX_WIDE_IDENTIFIER]
      */
     public short getBodyIdentifier() {
-        return (short) (((short) header[4]) & 0xFF);
+        return (short) (((header[5] & 0xFF) << 8) | (header[4] & 0xFF));
     }
 
     /**
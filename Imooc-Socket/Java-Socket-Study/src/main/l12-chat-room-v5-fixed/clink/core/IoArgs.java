@@ -3,9 +3,12 @@ package clink.core;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
  * IO参数，用于执行实际的异步读写操作，读写操作状态将会以异步回调的形式通知。
@@ -21,11 +24,32 @@ public class IoArgs {
 
     private final ByteBuffer buffer;
 
+    /**
+     * 分配时请求的大小，池化的缓冲区按 2 的幂分配，容量可能更大，读写区间不超过该大小
+     */
+    private final int size;
+
     /**
      * 是否需要消费所有的区间（读取、写入），主要用于直流的不定长数据包。
      */
     private final boolean isNeedConsumeRemaining;
 
+    /*
+    聚合写：发送时大块的数据（内存包、文件区间）不拷贝到 buffer 中，而是作为单独的分段附加进来，
+    写出时 buffer 中的数据与附加的数据按顺序组成多个分段，相邻的内存分段通过 GatheringByteChannel 一次写出，
+    文件区间通过 FileChannel.transferTo 直接写出。
+     */
+    private ByteBuffer[] segments;
+    // 与 segments 对应，不为 null 的位置是文件区间分段
+    private FileRegion[] regions;
+    private int segmentCount;
+    // 写出时第一个还有数据的分段
+    private int segmentOffset;
+    // buffer 中还未加入分段的数据的起始位置
+    private int stagingMark;
+    // 是否处于聚合写状态，finishWriting 时存在附加数据则为 true
+    private boolean isGathering;
+
     public IoArgs() {
         this(256);
     }
@@ -38,9 +62,21 @@ public class IoArgs {
      * @param isNeedConsumeRemaining 可以只接收部分数据就返回。
      */
     public IoArgs(int size, boolean isNeedConsumeRemaining) {
-        this.limit = size;
+        this(ByteBuffer.allocate(size), size, isNeedConsumeRemaining);
+    }
+
+    /**
+     * 使用外部提供的缓冲区构建 IoArgs，用于 {@link clink.core.alloc.IoArgsAllocator} 从池中分配。
+     *
+     * @param buffer                 缓冲区，可以是直接内存
+     * @param size                   默认的读写区间大小，不能大于 buffer 的容量
+     * @param isNeedConsumeRemaining 可以只接收部分数据就返回。
+     */
+    protected IoArgs(ByteBuffer buffer, int size, boolean isNeedConsumeRemaining) {
+        this.buffer = buffer;
+        this.size = Math.min(size, buffer.capacity());
+        this.limit = this.size;
         this.isNeedConsumeRemaining = isNeedConsumeRemaining;
-        this.buffer = ByteBuffer.allocate(size);
     }
 
     /**
@@ -55,11 +91,33 @@ public class IoArgs {
         return size;
     }
 
+    /**
+     * 从 src 中拷贝数据到 IoArgs 中。
+     */
+    public int readFrom(ByteBuffer src) {
+        int size = Math.min(src.remaining(), buffer.remaining());
+        if (size <= 0) {
+            return 0;
+        }
+        int oldLimit = src.limit();
+        src.limit(src.position() + size);
+        buffer.put(src);
+        src.limit(oldLimit);
+        return size;
+    }
+
     /**
      * 将 IoArgs 中的数据写入到 bytes 中。
      */
     public int writeTo(byte[] bytes, int offset) {
-        int size = Math.min(bytes.length - offset, buffer.remaining());
+        return writeTo(bytes, offset, bytes.length - offset);
+    }
+
+    /**
+     * 将 IoArgs 中最多 maxCount 字节的数据写入到 bytes 中。
+     */
+    public int writeTo(byte[] bytes, int offset, int maxCount) {
+        int size = Math.min(maxCount, buffer.remaining());
         buffer.get(bytes, offset, size);
         return size;
     }
@@ -79,6 +137,22 @@ public class IoArgs {
         return bytesProduced;
     }
 
+    /**
+     * 从 readableByteChannel 中读取最多 maxCount 字节的数据，用于多个帧共用一个 IoArgs 的情况。【保证读满 maxCount 或 IoArgs】
+     */
+    public int readFrom(ReadableByteChannel readableByteChannel, int maxCount) throws IOException {
+        if (maxCount >= buffer.remaining()) {
+            return readFrom(readableByteChannel);
+        }
+        int oldLimit = buffer.limit();
+        buffer.limit(buffer.position() + maxCount);
+        try {
+            return readFrom(readableByteChannel);
+        } finally {
+            buffer.limit(oldLimit);
+        }
+    }
+
     /**
      * 把数据写入到 writableByteChannel 中。【保证 IoArgs 中数据全部写完】
      */
@@ -94,6 +168,41 @@ public class IoArgs {
         return bytesProduced;
     }
 
+    /**
+     * 把最多 maxCount 字节的数据写入到 writableByteChannel 中，剩余的数据保留在 IoArgs 中。
+     */
+    public int writeTo(WritableByteChannel writableByteChannel, int maxCount) throws IOException {
+        if (maxCount >= buffer.remaining()) {
+            return writeTo(writableByteChannel);
+        }
+        int oldLimit = buffer.limit();
+        buffer.limit(buffer.position() + maxCount);
+        try {
+            return writeTo(writableByteChannel);
+        } finally {
+            buffer.limit(oldLimit);
+        }
+    }
+
+    /**
+     * 把最多 maxCount 字节的数据写入到文件的 position 位置，不改变文件通道自身的位置。
+     */
+    public int writeTo(FileChannel fileChannel, long position, int maxCount) throws IOException {
+        int oldLimit = buffer.limit();
+        if (maxCount < buffer.remaining()) {
+            buffer.limit(buffer.position() + maxCount);
+        }
+        try {
+            int bytesProduced = 0;
+            while (buffer.hasRemaining()) {
+                bytesProduced += fileChannel.write(buffer, position + bytesProduced);
+            }
+            return bytesProduced;
+        } finally {
+            buffer.limit(oldLimit);
+        }
+    }
+
     /**
      * 从 SocketChannel 读取数据，直到不可读为止。【用于 {@link clink.impl.SocketChannelAdapter} 中的非阻塞读】
      */
@@ -122,6 +231,9 @@ public class IoArgs {
      * 写数据到 SocketChannel，直到不可写为止。【用于 {@link clink.impl.SocketChannelAdapter} 中的非阻塞写】
      */
     public int writeTo(SocketChannel socketChannel) throws IOException {
+        if (isGathering) {
+            return gatherTo(socketChannel);
+        }
         int bytesProduced = 0;
         ByteBuffer localBuffer = this.buffer;
         int writeLength;
@@ -142,14 +254,143 @@ public class IoArgs {
         return bytesProduced;
     }
 
+    /**
+     * 以聚合写的方式写出所有分段，直到不可写为止
+     */
+    private int gatherTo(GatheringByteChannel channel) throws IOException {
+        long bytesProduced = 0;
+        long writeLength;
+        do {
+            // 跳过已经写完的分段
+            while (segmentOffset < segmentCount && segmentRemaining(segmentOffset) == 0) {
+                segmentOffset++;
+            }
+            if (segmentOffset == segmentCount) {
+                break;
+            }
+            FileRegion region = regions == null ? null : regions[segmentOffset];
+            if (region != null) {
+                writeLength = region.transferTo(channel);
+            } else {
+                // 一直到下一个文件区间之前的内存分段一次写出
+                int end = segmentOffset + 1;
+                while (end < segmentCount && (regions == null || regions[end] == null)) {
+                    end++;
+                }
+                writeLength = channel.write(segments, segmentOffset, end - segmentOffset);
+            }
+            if (writeLength < 0) {
+                throw new EOFException("Current write any data with:" + channel);
+            }
+            bytesProduced += writeLength;
+        } while (writeLength != 0);
+        return (int) bytesProduced;
+    }
+
+    /**
+     * 附加一段数据，写出时直接从 data 写出，不拷贝到 IoArgs 的缓冲区中。只用于发送。
+     * 附加的数据同样占用 IoArgs 的可写区间，data 的剩余数据量不能超过 {@link #remaining()}。
+     *
+     * @param data 要附加的数据，附加后不能再修改
+     * @return 附加的数据长度
+     */
+    public int attach(ByteBuffer data) {
+        int length = data.remaining();
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Attached data is larger than the remaining of IoArgs.");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        flushStaging();
+        addSegment(data, null);
+        buffer.limit(buffer.limit() - length);
+        return length;
+    }
+
+    /**
+     * 附加一段文件区间，写出时通过 {@link FileChannel#transferTo(long, long, WritableByteChannel)} 直接从文件写出到 Socket。
+     * 同样占用 IoArgs 的可写区间。
+     *
+     * @param channel  文件通道
+     * @param position 文件中的起始位置
+     * @param length   长度，不能超过 {@link #remaining()}
+     * @return 附加的数据长度
+     */
+    public int attach(FileChannel channel, long position, int length) {
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Attached data is larger than the remaining of IoArgs.");
+        }
+        if (length <= 0) {
+            return 0;
+        }
+        flushStaging();
+        addSegment(null, new FileRegion(channel, position, length));
+        buffer.limit(buffer.limit() - length);
+        return length;
+    }
+
+    private long segmentRemaining(int index) {
+        FileRegion region = regions == null ? null : regions[index];
+        return region != null ? region.remaining : segments[index].remaining();
+    }
+
+    /**
+     * 把 buffer 中还没有加入分段的数据作为一个分段
+     */
+    private void flushStaging() {
+        int position = buffer.position();
+        if (position > stagingMark) {
+            ByteBuffer staging = buffer.duplicate();
+            staging.limit(position);
+            staging.position(stagingMark);
+            addSegment(staging, null);
+            stagingMark = position;
+        }
+    }
+
+    private void addSegment(ByteBuffer segment, FileRegion region) {
+        if (segments == null) {
+            segments = new ByteBuffer[8];
+        } else if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            if (regions != null) {
+                regions = Arrays.copyOf(regions, segments.length);
+            }
+        }
+        if (region != null && regions == null) {
+            regions = new FileRegion[segments.length];
+        }
+        segments[segmentCount] = segment;
+        if (regions != null) {
+            regions[segmentCount] = region;
+        }
+        segmentCount++;
+    }
+
     public void startWriting() {
         //清理，开始写入数据
         buffer.clear();
         // 定义容纳区间
         buffer.limit(limit);
+        // 清理上次的分段
+        if (segmentCount > 0) {
+            Arrays.fill(segments, 0, segmentCount, null);
+            if (regions != null) {
+                Arrays.fill(regions, 0, segmentCount, null);
+            }
+        }
+        segmentCount = 0;
+        segmentOffset = 0;
+        stagingMark = 0;
+        isGathering = false;
     }
 
     public void finishWriting() {
+        if (segmentCount > 0) {
+            flushStaging();
+            isGathering = true;
+        }
         //切换到读取模式
         buffer.flip();
     }
@@ -158,26 +399,50 @@ public class IoArgs {
      * 设置本次读取数据的大小
      */
     public void limit(int receiveSize) {
-        limit = Math.min(receiveSize, buffer.capacity());
+        limit = Math.min(receiveSize, size);
     }
 
     /**
-     * 重置最大限制
+     * 重置最大限制为分配时请求的大小
      */
     public void resetLimit() {
-        this.limit = buffer.capacity();
+        this.limit = size;
     }
 
     public int readLength() {
         return buffer.getInt();
     }
 
+    /**
+     * 分配时请求的大小，即读写区间的上限
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 底层缓冲区的容量，池化时不小于 {@link #size()}
+     */
     public int capacity() {
         return buffer.capacity();
     }
 
     public boolean remained() {
-        return buffer.remaining() > 0;
+        return remaining() > 0;
+    }
+
+    /**
+     * 当前剩余可读写的数据量
+     */
+    public int remaining() {
+        if (isGathering) {
+            int remaining = 0;
+            for (int i = segmentOffset; i < segmentCount; i++) {
+                remaining += segmentRemaining(i);
+            }
+            return remaining;
+        }
+        return buffer.remaining();
     }
 
     /**
@@ -212,6 +477,19 @@ public class IoArgs {
         return fillSize;
     }
 
+    /**
+     * 是否使用直接内存，直接内存在 SocketChannel 读写时不需要 JDK 内部再拷贝一次。
+     */
+    public boolean isDirect() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * 释放当前 IoArgs，释放后不可再使用。默认的堆内存实现什么也不做，交由 GC 回收；池化实现会把缓冲区归还到池中。
+     */
+    public void release() {
+    }
+
     /**
      * IoArgs 提供者、处理者；数据的生产或消费者。定义为这种形式，用于异步处理 IO。
      */
@@ -239,6 +517,29 @@ public class IoArgs {
         void onConsumeCompleted(IoArgs args);
     }
 
+    /**
+     * 附加的文件区间
+     */
+    private static class FileRegion {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        FileRegion(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        long transferTo(WritableByteChannel target) throws IOException {
+            long count = channel.transferTo(position, remaining, target);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+    }
+
     @Override
     public String toString() {
         return "IoArgs{" +
@@ -2,6 +2,9 @@ package clink.core;
 
 import java.io.IOException;
 
+import clink.core.alloc.IoArgsAllocator;
+import clink.core.alloc.UnpooledIoArgsAllocator;
+
 /**
  * 上下文，用于初始化框架。
  *
@@ -14,10 +17,14 @@ public class IoContext {
     private static IoContext INSTANCE;
     private final IoProvider ioProvider;
     private final Scheduler scheduler;
+    private final IoArgsAllocator ioArgsAllocator;
+    private final ConnectorConfig connectorConfig;
 
-    private IoContext(IoProvider ioProvider, Scheduler scheduler) {
+    private IoContext(IoProvider ioProvider, Scheduler scheduler, IoArgsAllocator ioArgsAllocator, ConnectorConfig connectorConfig) {
         this.ioProvider = ioProvider;
         this.scheduler = scheduler;
+        this.ioArgsAllocator = ioArgsAllocator;
+        this.connectorConfig = connectorConfig;
     }
 
     public IoProvider getIoProvider() {
@@ -28,6 +35,14 @@ public class IoContext {
         return scheduler;
     }
 
+    public IoArgsAllocator getIoArgsAllocator() {
+        return ioArgsAllocator;
+    }
+
+    public ConnectorConfig getConnectorConfig() {
+        return connectorConfig;
+    }
+
     public static IoContext get() {
         return INSTANCE;
     }
@@ -56,6 +71,8 @@ public class IoContext {
 
         private IoProvider ioProvider;
         private Scheduler scheduler;
+        private IoArgsAllocator ioArgsAllocator;
+        private ConnectorConfig connectorConfig = ConnectorConfig.DEFAULT;
 
         private StartedBoot() {
         }
@@ -73,11 +90,30 @@ public class IoContext {
             return this;
         }
 
+        /**
+         * 向 IoContext 提供 IoArgs 分配器，不设置时使用非池化的堆内存分配器
+         */
+        public StartedBoot ioArgsAllocator(IoArgsAllocator ioArgsAllocator) {
+            this.ioArgsAllocator = ioArgsAllocator;
+            return this;
+        }
+
+        /**
+         * 设置连接的默认配置
+         */
+        public StartedBoot connectorConfig(ConnectorConfig connectorConfig) {
+            this.connectorConfig = connectorConfig;
+            return this;
+        }
+
         /**
          * 启动 IoContext
          */
         public IoContext start() {
-            INSTANCE = new IoContext(ioProvider, scheduler);
+            if (ioArgsAllocator == null) {
+                ioArgsAllocator = new UnpooledIoArgsAllocator();
+            }
+            INSTANCE = new IoContext(ioProvider, scheduler, ioArgsAllocator, connectorConfig);
             return INSTANCE;
         }
     }
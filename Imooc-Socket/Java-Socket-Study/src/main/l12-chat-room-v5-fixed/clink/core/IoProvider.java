@@ -30,14 +30,66 @@ public interface IoProvider extends Closeable {
      * 与关心可读/写的SocketChannel对应
      */
     abstract class HandleProviderCallback implements Runnable {
+
+        /**
+         * 当前线程正在执行的回调，不为 null 时表示处于 IO 回调中
+         */
+        private static final ThreadLocal<HandleProviderCallback> CURRENT = new ThreadLocal<>();
+
         /**
          * 附加本次未完全消费完成的IoArgs，然后进行自循环。
          */
         protected volatile IoArgs attach;
 
+        /**
+         * 本次回调读写的数据量，由执行回调的线程在回调结束后读取，用于统计负载
+         */
+        private int transferredBytes;
+
+        /**
+         * IoProvider 为该回调缓存的任务，每次注册时复用，不需要每次读写都创建
+         */
+        private volatile Object providerTask;
+
         @Override
         public final void run() {
-            onProviderIo(attach);
+            HandleProviderCallback previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                transferredBytes = 0;
+                onProviderIo(attach);
+            } finally {
+                CURRENT.set(previous);
+            }
+        }
+
+        /**
+         * 当前线程是否正在执行 IO 回调（如收到消息的回调），此时不能阻塞等待需要 IO 线程完成的操作
+         */
+        public static boolean isInIoCallback() {
+            return CURRENT.get() != null;
+        }
+
+        /**
+         * 记录本次回调读写的数据量
+         */
+        protected final void onTransferred(int count) {
+            transferredBytes += count;
+        }
+
+        /**
+         * 最近一次回调读写的数据量，只能在执行回调的线程中调用
+         */
+        public int getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        public Object getProviderTask() {
+            return providerTask;
+        }
+
+        public void setProviderTask(Object providerTask) {
+            this.providerTask = providerTask;
         }
 
         /**
@@ -21,6 +21,20 @@ public interface ReceiveDispatcher extends Closeable {
      */
     void start();
 
+    /**
+     * 收到的包交给其他线程处理，处理完成之前计入积压，积压超过上限时暂停读取
+     *
+     * @param length 包的长度
+     */
+    void onDeliveryPending(long length);
+
+    /**
+     * 积压的包处理完成，积压降下来后恢复读取
+     *
+     * @param length 包的长度
+     */
+    void onDeliveryCompleted(long length);
+
     /**
      * 数据接收的回调
      */
@@ -33,14 +47,39 @@ public interface ReceiveDispatcher extends Closeable {
 
         /**
          * 根据类型和长度创建第一的 Packet
+         *
+         * @return 返回 null 表示拒绝接收该包，之后会回调 {@link #onRejectPacket(short)}
          */
         ReceivePacket<?, ?> onArrivedNewPacket(byte type, long length, byte[] headerInfo);
 
+        /**
+         * 拒绝接收一个包时触发，需要通知对方停止发送
+         *
+         * @param identifier 包的唯一标识
+         */
+        void onRejectPacket(short identifier);
+
+        /**
+         * 对方拒绝接收我们发送的包时触发
+         *
+         * @param identifier 包的唯一标识
+         */
+        void onReceivedReject(short identifier);
+
         /**
          * 当收到一个心跳包时触发
          */
         void onReceivedHeartbeat();
 
+        /**
+         * 收到对方的握手信息时触发
+         *
+         * @param version        对方的协议版本
+         * @param features       对方支持的特性，参考 {@link Frame#FEATURES_SUPPORTED}
+         * @param maxFrameLength 对方能够接收的单帧最大长度
+         */
+        void onReceivedHandshake(byte version, int features, int maxFrameLength);
+
     }
 
 
@@ -2,6 +2,7 @@ package clink.core;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * 接收包的定义，不同的数据类型对应不同的 ReceivePack 实现。
@@ -30,6 +31,15 @@ public abstract class ReceivePacket<Stream extends OutputStream, Entity> extends
         return mEntity;
     }
 
+    /**
+     * 获取接收数据对应的文件通道，接收时按位置直接写入文件，不经过流的包装
+     *
+     * @return 默认返回 null，表示通过 {@link #open()} 的流写入
+     */
+    public FileChannel fileChannel() {
+        return null;
+    }
+
     /**
      * 根据接收到的流转化为对应的实体
      *
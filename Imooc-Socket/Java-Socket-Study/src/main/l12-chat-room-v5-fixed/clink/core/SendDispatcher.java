@@ -15,8 +15,19 @@ public interface SendDispatcher extends Closeable {
      * 发送一份数据
      *
      * @param packet 数据
+     * @return false 表示发送队列已满，按照溢出策略丢弃了该包或者关闭了连接
      */
-    void send(SendPacket packet);
+    boolean send(SendPacket packet);
+
+    /**
+     * 发送队列的数据量是否低于高水位线，不可写时继续发送会触发溢出策略
+     */
+    boolean isWritable();
+
+    /**
+     * 因为发送队列溢出而被丢弃的包的数量，包括关闭连接时丢弃的新包，用于统计
+     */
+    long getOverflowDropCount();
 
     /**
      * 取消发送数据
@@ -30,4 +41,45 @@ public interface SendDispatcher extends Closeable {
      */
     void sendHeartbeat();
 
+    /**
+     * 拒绝接收对方正在发送的包，通知对方停止发送，对方不支持拒绝帧时不发送
+     *
+     * @param identifier 包的唯一标识
+     */
+    void sendReject(short identifier);
+
+    /**
+     * 对方拒绝接收我们正在发送的包，停止发送该包
+     *
+     * @param identifier 包的唯一标识
+     */
+    void onPacketRejected(short identifier);
+
+    /**
+     * 发送握手信息，由发起握手的一端在连接建立后最先发送
+     */
+    void sendHandshake();
+
+    /**
+     * 收到对方的握手信息，之后只使用双方都支持的特性发送，不发起握手的一端在此回复
+     *
+     * @param version        对方的协议版本
+     * @param features       对方支持的特性
+     * @param maxFrameLength 对方能够接收的单帧最大长度
+     */
+    void onPeerHandshake(byte version, int features, int maxFrameLength);
+
+    /**
+     * 可写状态变化的监听
+     */
+    interface WritabilityListener {
+
+        /**
+         * 发送队列的数据量达到高水位线时变为不可写，降到低水位线以下时恢复可写
+         *
+         * @param isWritable 当前是否可写
+         */
+        void onWritabilityChanged(boolean isWritable);
+    }
+
 }
@@ -0,0 +1,29 @@
+package clink.core;
+
+/**
+ * 发送队列超过高水位线时对新的包的处理方式，见 {@link ConnectorConfig.Builder#sendQueue(long, long, SendOverflowPolicy)}
+ */
+public enum SendOverflowPolicy {
+
+    /**
+     * 阻塞发送线程，直到队列中的数据量降下来或者连接关闭。
+     * 发送完成需要 IO 线程处理，所以在 IO 回调中（如收到消息时直接回复）发送时不阻塞，按照 {@link #DROP_NEW} 处理。
+     */
+    BLOCK,
+
+    /**
+     * 丢弃队列中最早的还没有开始发送的包，为新的包腾出空间
+     */
+    DROP_OLDEST,
+
+    /**
+     * 丢弃新的包
+     */
+    DROP_NEW,
+
+    /**
+     * 关闭连接，对方消费太慢时不再为其保留数据
+     */
+    CLOSE
+
+}
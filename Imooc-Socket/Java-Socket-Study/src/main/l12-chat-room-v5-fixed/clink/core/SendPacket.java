@@ -2,6 +2,8 @@ package clink.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * 发送包的定义
@@ -12,8 +14,21 @@ import java.io.InputStream;
  */
 public abstract class SendPacket<Stream extends InputStream> extends Packet<Stream> {
 
+    /*
+    发送优先级，数值越大越优先发送。心跳、取消等控制帧总是使用最高优先级。
+     */
+    // 控制帧
+    public static final byte PRIORITY_HIGHEST = 3;
+    // 交互消息，如字符串
+    public static final byte PRIORITY_HIGH = 2;
+    public static final byte PRIORITY_NORMAL = 1;
+    // 大块数据，如文件、直流
+    public static final byte PRIORITY_LOW = 0;
+
     private boolean isCanceled = false;
 
+    private byte priority = PRIORITY_NORMAL;
+
     public boolean isCanceled() {
         return isCanceled;
     }
@@ -22,6 +37,58 @@ public abstract class SendPacket<Stream extends InputStream> extends Packet<Stre
         isCanceled = true;
     }
 
+    /**
+     * 包发送完成并关闭后由发送调度者调用，从对象池中获取的包在此回收，回收后不能再使用。
+     * 默认不做任何操作。
+     */
+    public void recycle() {
+    }
+
+    /**
+     * 重置取消状态与优先级，用于可复用的包
+     */
+    protected void reset() {
+        isCanceled = false;
+        priority = PRIORITY_NORMAL;
+    }
+
+    /**
+     * 获取发送优先级，同时发送多个包时优先级高的包的帧优先发送
+     */
+    public byte getPriority() {
+        return priority;
+    }
+
+    /**
+     * 设置发送优先级，需要在发送之前设置
+     *
+     * @param priority {@link #PRIORITY_LOW} ~ {@link #PRIORITY_HIGH}
+     */
+    public void setPriority(byte priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * 获取实体数据中的一段，用于聚合写时直接写出，避免拷贝到发送缓冲区中。
+     * 对于同一个包，要么总是返回 null，要么总是返回数据，发送时不会混用两种方式。
+     *
+     * @param position 在实体数据中的起始位置
+     * @param length   长度
+     * @return 默认返回 null，表示不支持，只能通过 {@link #open()} 的流读取
+     */
+    public ByteBuffer entityBuffer(long position, int length) throws IOException {
+        return null;
+    }
+
+    /**
+     * 获取实体数据对应的文件通道，发送时通过 transferTo 直接从文件写出到 Socket，优先于 {@link #entityBuffer(long, int)}。
+     *
+     * @return 默认返回 null，表示实体数据不是文件
+     */
+    public FileChannel fileChannel() {
+        return null;
+    }
+
     /**
      * 获取当前可用数据大小，注意：对于流的类型有限制，文件流一般可用正常获取，对于正在填充的流不一定有效，或得不到准确值。
      * <p><br>
@@ -0,0 +1,101 @@
+package clink.core.alloc;
+
+/**
+ * 自适应的接收缓冲区策略：
+ * <ul>
+ * <li>一次读取就（基本）填满了缓冲区，说明数据较多，立即扩大一级。</li>
+ * <li>连续两次读取量的指数加权移动平均（EWMA）都不超过更小的一级时，缩小一级。</li>
+ * </ul>
+ * 这样大数据量的连接（如文件传输）可以快速增长到较大的缓冲区以减少读取次数，而空闲的聊天连接只持有很小的缓冲区。
+ */
+public class AdaptiveReceiveBufferPolicy implements ReceiveBufferPolicy {
+
+    public static final int DEFAULT_MINIMUM = 64;
+    public static final int DEFAULT_INITIAL = 256;
+    public static final int DEFAULT_MAXIMUM = 64 * 1024;
+
+    // EWMA 的平滑系数
+    private static final float ALPHA = 0.25F;
+
+    // 按 2 的幂递增的大小表
+    private final int[] sizeTable;
+    private final int minIndex;
+    private final int maxIndex;
+
+    private int index;
+    private float average;
+    private boolean decreaseNow;
+
+    public AdaptiveReceiveBufferPolicy() {
+        this(DEFAULT_MINIMUM, DEFAULT_INITIAL, DEFAULT_MAXIMUM);
+    }
+
+    /**
+     * @param minimum 最小值
+     * @param initial 初始值
+     * @param maximum 最大值
+     */
+    public AdaptiveReceiveBufferPolicy(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException("minimum: " + minimum + ", initial: " + initial + ", maximum: " + maximum);
+        }
+        int count = 1;
+        for (long size = minimum; size < maximum; size <<= 1) {
+            count++;
+        }
+        sizeTable = new int[count];
+        for (int i = 0; i < count; i++) {
+            sizeTable[i] = (int) Math.min((long) minimum << i, maximum);
+        }
+        minIndex = 0;
+        maxIndex = count - 1;
+        index = indexOf(initial);
+        average = sizeTable[index];
+    }
+
+    private int indexOf(int size) {
+        for (int i = 0; i < sizeTable.length; i++) {
+            if (sizeTable[i] >= size) {
+                return i;
+            }
+        }
+        return sizeTable.length - 1;
+    }
+
+    @Override
+    public synchronized int guess() {
+        return sizeTable[index];
+    }
+
+    @Override
+    public synchronized void record(int bytesRead) {
+        average += (bytesRead - average) * ALPHA;
+        int current = sizeTable[index];
+        if (bytesRead >= current - (current >> 3)) {
+            // 读满了，尽快扩容
+            if (index < maxIndex) {
+                index++;
+            }
+            decreaseNow = false;
+        } else if (index > minIndex && average <= sizeTable[index - 1]) {
+            // 平均读取量已经不需要当前大小了，连续两次则缩小一级
+            if (decreaseNow) {
+                index--;
+                decreaseNow = false;
+            } else {
+                decreaseNow = true;
+            }
+        } else {
+            decreaseNow = false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveReceiveBufferPolicy{" +
+                "size=" + guess() +
+                ", average=" + average +
+                '}';
+    }
+
+}
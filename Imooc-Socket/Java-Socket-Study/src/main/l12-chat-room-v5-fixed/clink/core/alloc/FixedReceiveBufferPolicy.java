@@ -0,0 +1,26 @@
+package clink.core.alloc;
+
+/**
+ * 固定大小的接收缓冲区策略
+ */
+public class FixedReceiveBufferPolicy implements ReceiveBufferPolicy {
+
+    private final int size;
+
+    public FixedReceiveBufferPolicy(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be > 0");
+        }
+        this.size = size;
+    }
+
+    @Override
+    public int guess() {
+        return size;
+    }
+
+    @Override
+    public void record(int bytesRead) {
+    }
+
+}
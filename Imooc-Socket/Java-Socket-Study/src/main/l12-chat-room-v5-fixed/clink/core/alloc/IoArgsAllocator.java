@@ -0,0 +1,31 @@
+package clink.core.alloc;
+
+import clink.core.IoArgs;
+
+/**
+ * IoArgs 分配器，统一管理连接读写所用的缓冲区。通过 {@link clink.core.IoContext#setup()} 选择具体实现。
+ * <p>
+ * 分配得到的 IoArgs 在不再使用时需要调用 {@link IoArgs#release()} 归还。
+ */
+public interface IoArgsAllocator {
+
+    /**
+     * 分配一份 IoArgs
+     *
+     * @param capacity               需要的容量，实际容量可能更大
+     * @param isNeedConsumeRemaining 是否需要消费所有的区间
+     * @return IoArgs
+     */
+    IoArgs allocate(int capacity, boolean isNeedConsumeRemaining);
+
+    /**
+     * 分配一份默认需要消费所有区间的 IoArgs
+     *
+     * @param capacity 需要的容量
+     * @return IoArgs
+     */
+    default IoArgs allocate(int capacity) {
+        return allocate(capacity, true);
+    }
+
+}
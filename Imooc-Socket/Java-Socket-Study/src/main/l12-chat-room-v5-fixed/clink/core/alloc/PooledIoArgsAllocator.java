@@ -0,0 +1,380 @@
+package clink.core.alloc;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clink.core.IoArgs;
+import clink.core.IoProvider;
+
+/**
+ * 池化的 IoArgs 分配器：
+ * <ul>
+ * <li>按 2 的幂划分容量等级，每个等级一个共享池，默认分配直接内存，避免 SocketChannel 读写时 JDK 内部再拷贝一次。</li>
+ * <li>IO 线程在回调中持有一份小的本地缓存，按数量与字节数限制，分配与释放基本不需要访问共享池；
+ * 其他线程直接使用共享池，避免缓冲区滞留在不再分配的线程中。</li>
+ * <li>带有泄漏检测，IoArgs 未调用 {@link IoArgs#release()} 就被 GC 时通过 {@link LeakReporter} 报告，并把缓冲区收回到池中。</li>
+ * </ul>
+ */
+public class PooledIoArgsAllocator implements IoArgsAllocator {
+
+    /**
+     * 泄漏检测级别
+     */
+    public enum LeakDetection {
+        // 不检测
+        DISABLED,
+        // 抽样检测，不记录分配时的调用栈
+        SIMPLE,
+        // 全部检测，并记录分配时的调用栈，开销较大，用于排查问题
+        PARANOID
+    }
+
+    /**
+     * 泄漏报告，默认输出到标准错误，可以替换为日志或者监控
+     */
+    public interface LeakReporter {
+
+        /**
+         * 发现一次泄漏，在分配缓冲区的线程中回调
+         *
+         * @param capacity 泄漏的缓冲区的容量
+         * @param trace    分配时的调用栈，只在 {@link LeakDetection#PARANOID} 级别下记录，否则为 null
+         */
+        void onLeak(int capacity, Throwable trace);
+
+        LeakReporter STDERR = (capacity, trace) -> {
+            System.err.println("LEAK: IoArgs(" + capacity + ") was garbage-collected before release() was called.");
+            if (trace != null) {
+                trace.printStackTrace();
+            }
+        };
+    }
+
+    // 最小的容量等级 256
+    private static final int MIN_SIZE_SHIFT = 8;
+    // SIMPLE 级别下的抽样间隔
+    private static final int SIMPLE_SAMPLING_INTERVAL = 128;
+    // 每个线程缓存的默认字节数上限
+    private static final int DEFAULT_THREAD_CACHE_BYTES = 1024 * 1024;
+
+    private final boolean isDirect;
+    private final int maxSizeShift;
+    private final int threadCacheSize;
+    private final int threadCacheBytes;
+    private final LeakDetection leakDetection;
+    private volatile LeakReporter leakReporter = LeakReporter.STDERR;
+
+    // 每个容量等级对应的共享池
+    private final SizeClassPool[] pools;
+
+    // 线程本地缓存
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(pools.length, threadCacheSize, threadCacheBytes);
+        }
+    };
+
+    // 泄漏检测
+    private final ReferenceQueue<PooledIoArgs> leakQueue = new ReferenceQueue<>();
+    private final Set<LeakRecord> liveRecords = ConcurrentHashMap.newKeySet();
+    private final AtomicLong allocateCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+
+    public PooledIoArgsAllocator() {
+        this(true, 4 * 1024 * 1024, 64, 16, LeakDetection.SIMPLE);
+    }
+
+    /**
+     * @param isDirect          是否使用直接内存
+     * @param maxPooledCapacity 可池化的最大容量，超过该容量的分配不进行池化
+     * @param maxCachedPerClass 每个容量等级的共享池最多缓存的缓冲区数量
+     * @param threadCacheSize   每个线程每个容量等级最多缓存的缓冲区数量，0 表示不使用线程缓存
+     * @param leakDetection     泄漏检测级别
+     */
+    public PooledIoArgsAllocator(boolean isDirect, int maxPooledCapacity, int maxCachedPerClass,
+                                 int threadCacheSize, LeakDetection leakDetection) {
+        this(isDirect, maxPooledCapacity, maxCachedPerClass, threadCacheSize, DEFAULT_THREAD_CACHE_BYTES, leakDetection);
+    }
+
+    /**
+     * @param isDirect          是否使用直接内存
+     * @param maxPooledCapacity 可池化的最大容量，超过该容量的分配不进行池化
+     * @param maxCachedPerClass 每个容量等级的共享池最多缓存的缓冲区数量
+     * @param threadCacheSize   每个线程每个容量等级最多缓存的缓冲区数量，0 表示不使用线程缓存
+     * @param threadCacheBytes  每个线程缓存的缓冲区的总字节数上限，超过时归还到共享池
+     * @param leakDetection     泄漏检测级别
+     */
+    public PooledIoArgsAllocator(boolean isDirect, int maxPooledCapacity, int maxCachedPerClass,
+                                 int threadCacheSize, int threadCacheBytes, LeakDetection leakDetection) {
+        if (maxPooledCapacity < (1 << MIN_SIZE_SHIFT)) {
+            throw new IllegalArgumentException("maxPooledCapacity must be >= " + (1 << MIN_SIZE_SHIFT));
+        }
+        this.isDirect = isDirect;
+        this.maxSizeShift = sizeShift(maxPooledCapacity);
+        this.threadCacheSize = threadCacheSize;
+        this.threadCacheBytes = threadCacheBytes;
+        this.leakDetection = leakDetection;
+        this.pools = new SizeClassPool[maxSizeShift - MIN_SIZE_SHIFT + 1];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new SizeClassPool(maxCachedPerClass);
+        }
+    }
+
+    @Override
+    public IoArgs allocate(int capacity, boolean isNeedConsumeRemaining) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        // 每次分配时顺便处理已被 GC 的泄漏对象
+        reportLeaks();
+
+        int shift = sizeShift(capacity);
+        if (shift > maxSizeShift) {
+            // 超大的缓冲区不池化
+            return new PooledIoArgs(this, newBuffer(capacity), -1, capacity, isNeedConsumeRemaining);
+        }
+
+        int sizeIndex = shift - MIN_SIZE_SHIFT;
+        ByteBuffer buffer = null;
+        if (isThreadCacheUsable()) {
+            buffer = threadCache.get().poll(sizeIndex);
+        }
+        if (buffer == null) {
+            buffer = pools[sizeIndex].poll();
+        }
+        if (buffer == null) {
+            buffer = newBuffer(1 << shift);
+        }
+
+        PooledIoArgs args = new PooledIoArgs(this, buffer, sizeIndex, capacity, isNeedConsumeRemaining);
+        track(args);
+        return args;
+    }
+
+    /**
+     * 归还缓冲区，由 {@link PooledIoArgs#release()} 调用
+     */
+    private void recycle(PooledIoArgs args) {
+        LeakRecord record = args.leakRecord;
+        if (record != null) {
+            record.clear();
+            liveRecords.remove(record);
+        }
+        recycle(args.pooledBuffer, args.sizeIndex);
+    }
+
+    private void recycle(ByteBuffer buffer, int sizeIndex) {
+        if (sizeIndex < 0) {
+            return;
+        }
+        buffer.clear();
+        if (isThreadCacheUsable() && threadCache.get().offer(sizeIndex, buffer)) {
+            return;
+        }
+        pools[sizeIndex].offer(buffer);
+    }
+
+    /**
+     * 只有 IO 线程在回调中使用线程缓存，其他线程（如业务线程关闭连接时）释放的缓冲区之后很可能不会再在该线程分配
+     */
+    private boolean isThreadCacheUsable() {
+        return threadCacheSize > 0 && IoProvider.HandleProviderCallback.isInIoCallback();
+    }
+
+    private void track(PooledIoArgs args) {
+        final LeakDetection leakDetection = this.leakDetection;
+        if (leakDetection == LeakDetection.DISABLED) {
+            return;
+        }
+        if (leakDetection == LeakDetection.SIMPLE
+                && allocateCount.getAndIncrement() % SIMPLE_SAMPLING_INTERVAL != 0) {
+            return;
+        }
+        Throwable trace = leakDetection == LeakDetection.PARANOID
+                ? new Throwable("IoArgs allocated by " + Thread.currentThread().getName())
+                : null;
+        LeakRecord record = new LeakRecord(args, leakQueue, trace);
+        args.leakRecord = record;
+        liveRecords.add(record);
+    }
+
+    private void reportLeaks() {
+        LeakRecord record;
+        while ((record = (LeakRecord) leakQueue.poll()) != null) {
+            // 已经被正常释放的记录会先从集合中移除
+            if (!liveRecords.remove(record)) {
+                continue;
+            }
+            leakCount.incrementAndGet();
+            leakReporter.onLeak(record.buffer.capacity(), record.trace);
+            // IoArgs 已经不可达，缓冲区可以安全地收回
+            recycle(record.buffer, record.sizeIndex);
+        }
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return isDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * 设置泄漏报告，默认为 {@link LeakReporter#STDERR}
+     */
+    public void setLeakReporter(LeakReporter leakReporter) {
+        this.leakReporter = leakReporter == null ? LeakReporter.STDERR : leakReporter;
+    }
+
+    /**
+     * 获取检测到的泄漏次数
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * 获取共享池中缓存的缓冲区总数量
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (SizeClassPool pool : pools) {
+            count += pool.size.get();
+        }
+        return count;
+    }
+
+    /**
+     * 计算容纳 capacity 所需的最小 2 的幂
+     */
+    private static int sizeShift(int capacity) {
+        if (capacity <= (1 << MIN_SIZE_SHIFT)) {
+            return MIN_SIZE_SHIFT;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    /**
+     * 池化的 IoArgs，释放时把缓冲区归还到分配器
+     */
+    private static class PooledIoArgs extends IoArgs {
+
+        private final PooledIoArgsAllocator allocator;
+        private final ByteBuffer pooledBuffer;
+        private final int sizeIndex;
+        private final AtomicBoolean isReleased = new AtomicBoolean(false);
+        private volatile LeakRecord leakRecord;
+
+        PooledIoArgs(PooledIoArgsAllocator allocator, ByteBuffer buffer, int sizeIndex, int size, boolean isNeedConsumeRemaining) {
+            super(buffer, size, isNeedConsumeRemaining);
+            this.allocator = allocator;
+            this.pooledBuffer = buffer;
+            this.sizeIndex = sizeIndex;
+        }
+
+        @Override
+        public void release() {
+            if (isReleased.compareAndSet(false, true)) {
+                allocator.recycle(this);
+            }
+        }
+    }
+
+    /**
+     * 泄漏记录，弱引用 IoArgs，强引用其缓冲区
+     */
+    private static class LeakRecord extends WeakReference<PooledIoArgs> {
+
+        private final ByteBuffer buffer;
+        private final int sizeIndex;
+        private final Throwable trace;
+
+        LeakRecord(PooledIoArgs referent, ReferenceQueue<PooledIoArgs> queue, Throwable trace) {
+            super(referent, queue);
+            this.buffer = referent.pooledBuffer;
+            this.sizeIndex = referent.sizeIndex;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * 某个容量等级的共享池
+     */
+    private static class SizeClassPool {
+
+        private final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxCached;
+
+        SizeClassPool(int maxCached) {
+            this.maxCached = maxCached;
+        }
+
+        ByteBuffer poll() {
+            ByteBuffer buffer = queue.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        void offer(ByteBuffer buffer) {
+            // 超过上限则丢弃，交由 GC 回收
+            if (size.incrementAndGet() > maxCached) {
+                size.decrementAndGet();
+                return;
+            }
+            queue.offer(buffer);
+        }
+    }
+
+    /**
+     * 线程本地缓存，只会被所属线程访问，不需要同步
+     */
+    private static class ThreadCache {
+
+        private final ByteBuffer[][] stacks;
+        private final int[] counts;
+        private final long maxBytes;
+        // 当前缓存的缓冲区的总字节数
+        private long bytes;
+
+        ThreadCache(int sizeClassCount, int capacity, long maxBytes) {
+            stacks = new ByteBuffer[sizeClassCount][capacity];
+            counts = new int[sizeClassCount];
+            this.maxBytes = maxBytes;
+        }
+
+        ByteBuffer poll(int sizeIndex) {
+            int count = counts[sizeIndex];
+            if (count == 0) {
+                return null;
+            }
+            count--;
+            ByteBuffer buffer = stacks[sizeIndex][count];
+            stacks[sizeIndex][count] = null;
+            counts[sizeIndex] = count;
+            bytes -= buffer.capacity();
+            return buffer;
+        }
+
+        boolean offer(int sizeIndex, ByteBuffer buffer) {
+            int count = counts[sizeIndex];
+            ByteBuffer[] stack = stacks[sizeIndex];
+            if (count >= stack.length || bytes + buffer.capacity() > maxBytes) {
+                return false;
+            }
+            stack[count] = buffer;
+            counts[sizeIndex] = count + 1;
+            bytes += buffer.capacity();
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package clink.core.alloc;
+
+/**
+ * 接收缓冲区大小策略，决定每次从 SocketChannel 读取数据时使用多大的缓冲区。每个连接持有一份独立的实例。
+ */
+public interface ReceiveBufferPolicy {
+
+    /**
+     * 下一次读取应当使用的缓冲区大小
+     *
+     * @return 缓冲区大小
+     */
+    int guess();
+
+    /**
+     * 记录一次读取的结果，用于调整后续的缓冲区大小
+     *
+     * @param bytesRead 本次实际读取到的字节数
+     */
+    void record(int bytesRead);
+
+}
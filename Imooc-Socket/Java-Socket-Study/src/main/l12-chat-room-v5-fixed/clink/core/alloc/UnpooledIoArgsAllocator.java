@@ -0,0 +1,39 @@
+package clink.core.alloc;
+
+import java.nio.ByteBuffer;
+
+import clink.core.IoArgs;
+
+/**
+ * 非池化的分配器，每次都新建缓冲区，释放时交由 GC 回收，{@link clink.core.IoContext} 默认使用该实现。
+ */
+public class UnpooledIoArgsAllocator implements IoArgsAllocator {
+
+    private final boolean isDirect;
+
+    public UnpooledIoArgsAllocator() {
+        this(false);
+    }
+
+    /**
+     * @param isDirect 是否使用直接内存
+     */
+    public UnpooledIoArgsAllocator(boolean isDirect) {
+        this.isDirect = isDirect;
+    }
+
+    @Override
+    public IoArgs allocate(int capacity, boolean isNeedConsumeRemaining) {
+        if (!isDirect) {
+            return new IoArgs(capacity, isNeedConsumeRemaining);
+        }
+        return new UnpooledIoArgs(ByteBuffer.allocateDirect(capacity), capacity, isNeedConsumeRemaining);
+    }
+
+    private static class UnpooledIoArgs extends IoArgs {
+        UnpooledIoArgs(ByteBuffer buffer, int size, boolean isNeedConsumeRemaining) {
+            super(buffer, size, isNeedConsumeRemaining);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package clink.core.ds;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * 按优先级分层的队列，每个优先级一个 {@link ArrayDeque}，入队出队都是 O(1)，同一优先级内先进先出。
+ * <p>
+ * 高优先级连续出队 starvationLimit 次后，如果低优先级还有数据，则让低优先级出队一次，避免低优先级被饿死。
+ * <p>
+ * 非线程安全，由调用者同步。
+ */
+public class BytePriorityQueue<Item> {
+
+    private final ArrayDeque<Item>[] queues;
+    private final int starvationLimit;
+
+    private int size;
+    // 有低优先级数据等待时，高优先级连续出队的次数
+    private int highStreak;
+
+    /**
+     * @param levels          优先级数量，优先级范围为 [0, levels)，数值越大优先级越高
+     * @param starvationLimit 高优先级最多连续出队的次数
+     */
+    @SuppressWarnings("unchecked")
+    public BytePriorityQueue(int levels, int starvationLimit) {
+        queues = new ArrayDeque[levels];
+        for (int i = 0; i < levels; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        this.starvationLimit = starvationLimit;
+    }
+
+    /**
+     * 添加到对应优先级的队尾，超出范围的优先级按最近的边界处理
+     */
+    public void offer(Item item, byte priority) {
+        int level = Math.max(0, Math.min(priority, queues.length - 1));
+        queues[level].offerLast(item);
+        size++;
+    }
+
+    public Item poll() {
+        if (size == 0) {
+            return null;
+        }
+        int top = nextLevel(queues.length - 1);
+        int lower = nextLevel(top - 1);
+        int level = top;
+        if (lower < 0) {
+            highStreak = 0;
+        } else if (++highStreak > starvationLimit) {
+            highStreak = 0;
+            level = lower;
+        }
+        size--;
+        return queues[level].pollFirst();
+    }
+
+    /**
+     * 从 from 开始向下查找第一个不为空的优先级
+     */
+    private int nextLevel(int from) {
+        for (int i = from; i >= 0; i--) {
+            if (!queues[i].isEmpty()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(Consumer<Item> action) {
+        for (ArrayDeque<Item> queue : queues) {
+            queue.forEach(action);
+        }
+    }
+
+    public void clear() {
+        for (ArrayDeque<Item> queue : queues) {
+            queue.clear();
+        }
+        size = 0;
+        highStreak = 0;
+    }
+
+}
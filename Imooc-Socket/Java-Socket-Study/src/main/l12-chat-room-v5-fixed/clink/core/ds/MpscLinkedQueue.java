@@ -0,0 +1,119 @@
+package clink.core.ds;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 侵入式的多生产者单消费者队列（Vyukov），元素自身就是链表节点，入队出队不分配内存。
+ * <p>
+ * 每个节点同时只能在一个队列中出现一次，已在队列中的节点再次入队会被忽略，
+ * 出队时清除标记，之后可以再次入队，适合长期复用的任务对象。
+ * <p>
+ * {@link #offer(Node)} 可以由任意线程调用，{@link #poll()} 只能由消费者线程调用。
+ * 生产者正在入队时消费者可能短暂地看不到之后的节点，此时 poll 返回 null 而 isEmpty 返回 false，稍后重试即可。
+ */
+public class MpscLinkedQueue<Item extends MpscLinkedQueue.Node> {
+
+    /**
+     * 队列的节点，由元素继承
+     */
+    public static class Node {
+
+        private static final AtomicIntegerFieldUpdater<Node> QUEUED_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "queued");
+
+        private volatile Node next;
+        // 1 表示已在队列中
+        private volatile int queued;
+
+        /**
+         * 是否已在队列中，并发时只是近似值
+         */
+        public boolean isQueued() {
+            return queued != 0;
+        }
+
+    }
+
+    // 队列为空时头尾都指向该节点
+    private final Node stub = new Node();
+    // 生产者入队的位置
+    private final AtomicReference<Node> tail = new AtomicReference<>(stub);
+    // 消费者出队的位置，只有消费者访问
+    private Node head = stub;
+
+    /**
+     * 入队
+     *
+     * @return false 表示节点已在队列中
+     */
+    public boolean offer(Item item) {
+        if (!Node.QUEUED_UPDATER.compareAndSet(item, 0, 1)) {
+            return false;
+        }
+        enqueue(item);
+        return true;
+    }
+
+    private void enqueue(Node node) {
+        node.next = null;
+        Node prev = tail.getAndSet(node);
+        // 此处与上一行之间，消费者看不到该节点之后的链
+        prev.next = node;
+    }
+
+    /**
+     * 出队，只能由消费者线程调用
+     *
+     * @return null 表示为空，或者生产者正在入队
+     */
+    @SuppressWarnings("unchecked")
+    public Item poll() {
+        Node head = this.head;
+        Node next = head.next;
+        if (head == stub) {
+            if (next == null) {
+                return null;
+            }
+            // 跳过占位节点
+            this.head = next;
+            head = next;
+            next = next.next;
+        }
+
+        if (next == null) {
+            if (head != tail.get()) {
+                // 生产者还没有链接上
+                return null;
+            }
+            // 最后一个节点，放回占位节点才能把它取出
+            enqueue(stub);
+            next = head.next;
+            if (next == null) {
+                return null;
+            }
+        }
+
+        this.head = next;
+        head.next = null;
+        head.queued = 0;
+        return (Item) head;
+    }
+
+    /**
+     * 是否为空，可以由任意线程调用
+     */
+    public boolean isEmpty() {
+        return tail.get() == stub;
+    }
+
+    /**
+     * 清空，只能由消费者线程调用
+     */
+    public void clear() {
+        while (poll() != null) {
+            // 出队时清除标记
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package clink.core.ds;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 以整数下标直接定位的定长槽位表，用于按包标识存取正在接收的包，存取都是 O(1)，不需要装箱与哈希。
+ * <p>
+ * 槽位按页懒分配，容量很大（如宽标识）但只使用少量下标时不会占用整个容量的内存。
+ * <p>
+ * 非线程安全，只在连接的接收线程中使用，由调用者保证。
+ */
+public class SlotTable<Item> {
+
+    // 每页 256 个槽位，只使用窄标识时只有一页
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private final Object[][] pages;
+    private final int capacity;
+
+    private int size;
+    // 同时占用的槽位数量的峰值
+    private int peakSize;
+    // 累计占用过的槽位次数
+    private long totalOccupied;
+
+    /**
+     * @param capacity 槽位数量，下标范围为 [0, capacity)
+     */
+    public SlotTable(int capacity) {
+        this.capacity = capacity;
+        pages = new Object[(capacity + PAGE_MASK) >>> PAGE_SHIFT][];
+    }
+
+    @SuppressWarnings("unchecked")
+    public Item get(int index) {
+        Object[] page = pages[index >>> PAGE_SHIFT];
+        return page == null ? null : (Item) page[index & PAGE_MASK];
+    }
+
+    /**
+     * 占用一个槽位，槽位已被占用时覆盖并返回旧值
+     */
+    @SuppressWarnings("unchecked")
+    public Item put(int index, Item item) {
+        int pageIndex = index >>> PAGE_SHIFT;
+        Object[] page = pages[pageIndex];
+        if (page == null) {
+            // 最后一页只分配到容量为止，越界的下标与不分页时一样抛出异常
+            page = new Object[Math.min(PAGE_SIZE, capacity - (pageIndex << PAGE_SHIFT))];
+            pages[pageIndex] = page;
+        }
+        int slot = index & PAGE_MASK;
+        Item old = (Item) page[slot];
+        page[slot] = item;
+        if (old == null) {
+            size++;
+            if (size > peakSize) {
+                peakSize = size;
+            }
+        }
+        totalOccupied++;
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Item remove(int index) {
+        Object[] page = pages[index >>> PAGE_SHIFT];
+        if (page == null) {
+            return null;
+        }
+        int slot = index & PAGE_MASK;
+        Item old = (Item) page[slot];
+        if (old != null) {
+            page[slot] = null;
+            size--;
+        }
+        return old;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 当前占用的槽位数量
+     */
+    public int size() {
+        return size;
+    }
+
+    public int peakSize() {
+        return peakSize;
+    }
+
+    public long totalOccupied() {
+        return totalOccupied;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<Item> action) {
+        if (size == 0) {
+            return;
+        }
+        for (Object[] page : pages) {
+            if (page == null) {
+                continue;
+            }
+            for (Object slot : page) {
+                if (slot != null) {
+                    action.accept((Item) slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空所有槽位，已分配的页保留下来继续使用
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        for (Object[] page : pages) {
+            if (page != null) {
+                Arrays.fill(page, null);
+            }
+        }
+        size = 0;
+    }
+
+}
@@ -0,0 +1,130 @@
+package clink.core.ds;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 无锁的工作窃取双端队列（Chase-Lev），拥有者在底部入队出队，其他线程从顶部窃取。
+ * <p>
+ * 拥有者的入队出队不需要 CAS，只有和窃取者争抢最后一个元素时才需要；窃取者之间通过 CAS 顶部下标竞争。
+ * 使用环形数组，满了之后扩容为两倍，入队不分配节点。
+ * <p>
+ * {@link #push(Object)} 与 {@link #pop()} 只能由拥有者线程调用，{@link #steal()} 可以由任意线程调用。
+ * 窃取的位置不会被清空（拥有者可能已经复用了该位置），所以被窃取的元素在被覆盖之前不会被回收。
+ */
+public class WorkStealingDeque<Item> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // 下一个被窃取的位置
+    private final AtomicLong top = new AtomicLong();
+    // 下一个入队的位置，只有拥有者修改
+    private volatile long bottom;
+    private volatile AtomicReferenceArray<Item> array;
+
+    public WorkStealingDeque() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 初始容量，向上取整为 2 的幂
+     */
+    public WorkStealingDeque(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        array = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 拥有者在底部入队
+     */
+    public void push(Item item) {
+        long b = bottom;
+        long t = top.get();
+        AtomicReferenceArray<Item> a = array;
+        if (b - t >= a.length()) {
+            a = grow(a, b, t);
+        }
+        a.set((int) b & (a.length() - 1), item);
+        // 写入元素之后再发布新的底部下标
+        bottom = b + 1;
+    }
+
+    /**
+     * 拥有者从底部出队，后进先出
+     *
+     * @return null 表示已空，或者最后一个元素被窃取
+     */
+    public Item pop() {
+        long b = bottom - 1;
+        AtomicReferenceArray<Item> a = array;
+        // 先占住底部再读取顶部，两次 volatile 访问保证窃取者看到新的底部
+        bottom = b;
+        long t = top.get();
+        if (t > b) {
+            // 已空
+            bottom = b + 1;
+            return null;
+        }
+
+        int index = (int) b & (a.length() - 1);
+        Item item = a.get(index);
+        if (t == b) {
+            // 最后一个元素，和窃取者竞争
+            if (!top.compareAndSet(t, t + 1)) {
+                item = null;
+            }
+            bottom = b + 1;
+            return item;
+        }
+        a.set(index, null);
+        return item;
+    }
+
+    /**
+     * 从顶部窃取，先进先出
+     *
+     * @return null 表示已空，或者与其他线程竞争失败
+     */
+    public Item steal() {
+        long t = top.get();
+        long b = bottom;
+        if (t >= b) {
+            return null;
+        }
+        AtomicReferenceArray<Item> a = array;
+        Item item = a.get((int) t & (a.length() - 1));
+        if (!top.compareAndSet(t, t + 1)) {
+            return null;
+        }
+        return item;
+    }
+
+    /**
+     * 扩容为两倍，只由拥有者调用，旧数组保持不变，正在窃取的线程仍然可以读取
+     */
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> old, long b, long t) {
+        AtomicReferenceArray<Item> a = new AtomicReferenceArray<>(old.length() << 1);
+        for (long i = t; i < b; i++) {
+            a.set((int) i & (a.length() - 1), old.get((int) i & (old.length() - 1)));
+        }
+        array = a;
+        return a;
+    }
+
+    /**
+     * 当前的元素数量，并发时只是近似值
+     */
+    public int size() {
+        long size = bottom - top.get();
+        return size > 0 ? (int) size : 0;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return array.length();
+    }
+
+}
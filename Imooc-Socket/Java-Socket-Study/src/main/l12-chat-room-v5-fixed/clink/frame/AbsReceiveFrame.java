@@ -7,19 +7,44 @@ import clink.core.IoArgs;
 
 /**
  * 接收帧的基础实现，对于接收帧而言，头部信息肯定是在外层解析的，根据解析到的头部信息来构建不同类型的帧。
+ * 接收帧只在连接的接收线程中使用，不需要同步。
  */
 public abstract class AbsReceiveFrame extends Frame {
 
     /*还有多少没有接收*/
-    volatile int bodyRemaining;
+    int bodyRemaining;
 
     public AbsReceiveFrame(byte[] header) {
         super(header);
         bodyRemaining = getBodyLength();
     }
 
+    /**
+     * 用于可复用的帧，使用前需要调用 {@link #reset(byte[])}
+     */
+    AbsReceiveFrame() {
+        super(new byte[FRAME_HEADER_LENGTH]);
+    }
+
+    /**
+     * 使用新的帧头重新初始化当前帧，一个连接同一时刻只有一个帧在接收，帧接收完成后即可复用
+     *
+     * @param header 6字节的帧头数据
+     */
+    void reset(byte[] header) {
+        System.arraycopy(header, 0, this.header, 0, FRAME_HEADER_LENGTH);
+        bodyRemaining = getBodyLength();
+        onReset();
+    }
+
+    /**
+     * 复用时清理上一帧遗留的状态
+     */
+    protected void onReset() {
+    }
+
     @Override
-    public synchronized boolean handle(IoArgs args) throws IOException {
+    public boolean handle(IoArgs args) throws IOException {
         if (bodyRemaining == 0) {
             return true;
         }
@@ -33,23 +33,49 @@ public abstract class AbsSendFrame extends Frame {
         bodyRemaining = getBodyLength();
     }
 
+    /**
+     * 用于可复用的帧，使用前需要调用 {@link #init(int, byte, byte, short)}
+     */
+    AbsSendFrame() {
+    }
+
+    /**
+     * 重新初始化帧头与读写状态
+     */
+    void init(int length, byte type, byte flag, short identifier) {
+        initHeader(length, type, flag, identifier);
+        mHeaderRemaining = Frame.FRAME_HEADER_LENGTH;
+        bodyRemaining = length;
+    }
+
+    /**
+     * 帧已经填充完成并从发送队列移除，可复用的帧在此回收，回收后不能再使用
+     */
+    public void recycle() {
+    }
+
+    /**
+     * 把当前帧的数据追加到 args 中，args 的写入状态由调用者维护（startWriting/finishWriting），
+     * 这样多个帧可以连续写入同一个 IoArgs，一次网络写出。
+     */
     @Override
     public synchronized boolean handle(IoArgs args) throws IOException {
-        try {
-            args.limit(mHeaderRemaining + bodyRemaining);
-            args.startWriting();
-            if (mHeaderRemaining > 0 && args.remained()) {
-                mHeaderRemaining -= consumeHeader(args);
-            }
-            if (mHeaderRemaining == 0 && bodyRemaining > 0 && args.remained()) {
-                bodyRemaining -= consumeBody(args);
-            }
-            return mHeaderRemaining == 0 && bodyRemaining == 0;
-        } finally {
-            args.finishWriting();
+        return handleFrame(args);
+    }
+
+    final boolean handleFrame(IoArgs args) throws IOException {
+        if (mHeaderRemaining > 0 && args.remained()) {
+            mHeaderRemaining -= consumeHeader(args);
+        }
+        if (mHeaderRemaining == 0 && bodyRemaining > 0 && args.remained()) {
+            bodyRemaining -= consumeBody(args);
         }
+        return mHeaderRemaining == 0 && bodyRemaining == 0;
     }
 
+    /**
+     * 消费帧体数据，最多写入 {@link #bodyRemaining} 字节，args 中可能还有其他帧的空间
+     */
     protected abstract int consumeBody(IoArgs args) throws IOException;
 
     private byte consumeHeader(IoArgs args) {
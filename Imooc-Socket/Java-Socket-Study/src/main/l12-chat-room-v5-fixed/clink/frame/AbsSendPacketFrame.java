@@ -18,6 +18,14 @@ public abstract class AbsSendPacketFrame extends AbsSendFrame {
         this.packet = packet;
     }
 
+    AbsSendPacketFrame() {
+    }
+
+    synchronized void init(int length, byte type, byte flag, short identifier, SendPacket<?> packet) {
+        init(length, type, flag, identifier);
+        this.packet = packet;
+    }
+
     /**
      * 获取当前正在发送的包
      */
@@ -31,9 +39,23 @@ public abstract class AbsSendPacketFrame extends AbsSendFrame {
             // 已取消，并且未发送任何数据，直接返回结束，发送下一帧
             return true;
         }
+        int maxBodyLength = args.remaining() - Frame.FRAME_HEADER_LENGTH;
+        if (packet != null && !isSending() && maxBodyLength > 0) {
+            // 帧开始发送前，根据 args 剩余的空间调整帧的长度，非批量发送时的小缓冲区同样如此
+            fitBodyLength(maxBodyLength);
+        }
         return super.handle(args);
     }
 
+    /**
+     * 帧开始发送之前调用，帧头还未写出，可以缩短帧的长度，使整个帧能一次写入当前的 IoArgs。
+     * 这样帧不会跨越两次写出，终止时总是处于帧的边界，不需要再填充假数据。
+     *
+     * @param maxBodyLength 当前 IoArgs 还能容纳的帧体长度，大于 0
+     */
+    protected void fitBodyLength(int maxBodyLength) {
+    }
+
     /**
      * 构建下一帧时做一次判断，如果已经终止，则没有下一帧，如果没有则尝试进行构建操作。
      *
@@ -46,7 +68,8 @@ public abstract class AbsSendPacketFrame extends AbsSendFrame {
 
     /**
      * 终止当前帧，需要在当前方法中做一些操作，以及状态的维护，
-     * 后续可以扩展{@link #fillDirtyDataOnAbort()}方法对数据进行填充操作
+     * 后续可以扩展{@link #fillDirtyDataOnAbort()}方法对数据进行填充操作。
+     * 实体帧会通过 {@link #fitBodyLength(int)} 避免跨越两次写出，不会在发送途中被终止
      *
      * @return True：完美终止，可以顺利的移除当前帧；False：已发送部分数据
      */
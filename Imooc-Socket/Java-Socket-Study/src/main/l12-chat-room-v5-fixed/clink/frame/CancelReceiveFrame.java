@@ -11,8 +11,7 @@ import clink.core.IoArgs;
  */
 public class CancelReceiveFrame extends AbsReceiveFrame {
 
-    public CancelReceiveFrame(byte[] header) {
-        super(header);
+    CancelReceiveFrame() {
     }
 
     @Override
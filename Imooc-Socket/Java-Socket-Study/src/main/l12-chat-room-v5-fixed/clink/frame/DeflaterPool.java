@@ -0,0 +1,49 @@
+package clink.frame;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+
+import clink.core.SendPacket;
+
+/**
+ * 一个连接的压缩器缓存。
+ * <p>
+ * 同时压缩发送的包各自使用一个压缩器，包发送完成后重置并留给之后的包复用，
+ * 缓存的数量不超过同时发送的包的数量，不需要每个包都创建压缩器与缓冲区。
+ */
+public class DeflaterPool implements Closeable {
+
+    private final ArrayDeque<EntityDeflater> mIdleDeflaters = new ArrayDeque<>();
+
+    private boolean isClosed;
+
+    synchronized EntityDeflater take(SendPacket<?> packet) {
+        EntityDeflater deflater = mIdleDeflaters.pollLast();
+        if (deflater == null) {
+            deflater = new EntityDeflater(this);
+        }
+        deflater.bind(packet);
+        return deflater;
+    }
+
+    synchronized void recycle(EntityDeflater deflater) {
+        if (isClosed) {
+            deflater.end();
+            return;
+        }
+        mIdleDeflaters.offerLast(deflater);
+    }
+
+    /**
+     * 释放缓存的压缩器，正在使用的压缩器在其包结束时释放
+     */
+    @Override
+    public synchronized void close() {
+        isClosed = true;
+        for (EntityDeflater deflater : mIdleDeflaters) {
+            deflater.end();
+        }
+        mIdleDeflaters.clear();
+    }
+
+}
@@ -0,0 +1,123 @@
+package clink.frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.Deflater;
+
+import clink.core.SendPacket;
+
+/**
+ * 包实体数据的流式压缩，一个包的所有实体帧共用一个实例。
+ * <p>
+ * 每一帧压缩一段实体数据，并以 {@link Deflater#SYNC_FLUSH} 结束，这样每一帧的压缩数据都能被接收方立即解压，
+ * 帧的长度就是压缩后的长度，实体帧的分片方式不变。
+ * <p>
+ * 实例由 {@link DeflaterPool} 管理，包发送完成后重置并复用，缓冲区按包的长度分配，只在遇到更长的包时扩容。
+ */
+class EntityDeflater {
+
+    /**
+     * 每一帧最多压缩的原始数据长度，压缩后的最大长度也不会超过 {@link clink.core.Frame#MAX_CAPACITY}
+     */
+    static final int MAX_INPUT_LENGTH = 32 * 1024;
+
+    // 最坏情况下压缩后的数据会比原始数据稍大
+    private static final int OUTPUT_EXTRA_LENGTH = 1024;
+
+    private final DeflaterPool mPool;
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private byte[] mInput = new byte[0];
+    private byte[] mOutput = new byte[0];
+
+    private SendPacket<?> mPacket;
+
+    /*包不支持 entityBuffer 与 fileChannel 时从流中读取*/
+    private ReadableByteChannel mChannel;
+
+    EntityDeflater(DeflaterPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * 开始压缩一个包，缓冲区不小于 min(包长度, {@link #MAX_INPUT_LENGTH})
+     */
+    void bind(SendPacket<?> packet) {
+        mPacket = packet;
+        int inputLength = (int) Math.min(packet.getLength(), MAX_INPUT_LENGTH);
+        if (mInput.length < inputLength) {
+            mInput = new byte[inputLength];
+            mOutput = new byte[inputLength + OUTPUT_EXTRA_LENGTH];
+        }
+    }
+
+    /**
+     * 读取并压缩实体数据中的一段
+     *
+     * @param position 在实体数据中的起始位置
+     * @param length   原始数据长度，不大于 {@link #MAX_INPUT_LENGTH}
+     * @return 压缩后的长度
+     */
+    int deflate(long position, int length) throws IOException {
+        readInput(position, length);
+        mDeflater.setInput(mInput, 0, length);
+        int outputLength = 0;
+        int count;
+        do {
+            count = mDeflater.deflate(mOutput, outputLength, mOutput.length - outputLength, Deflater.SYNC_FLUSH);
+            outputLength += count;
+        } while (count > 0 && outputLength < mOutput.length);
+        if (outputLength >= mOutput.length || !mDeflater.needsInput()) {
+            throw new IOException("Deflate output overflow.");
+        }
+        return outputLength;
+    }
+
+    private void readInput(long position, int length) throws IOException {
+        ByteBuffer buffer = mPacket.entityBuffer(position, length);
+        if (buffer != null) {
+            buffer.get(mInput, 0, length);
+            return;
+        }
+        ByteBuffer input = ByteBuffer.wrap(mInput, 0, length);
+        FileChannel fileChannel = mPacket.fileChannel();
+        while (input.hasRemaining()) {
+            int count;
+            if (fileChannel != null) {
+                count = fileChannel.read(input, position + input.position());
+            } else {
+                if (mChannel == null) {
+                    mChannel = Channels.newChannel(mPacket.open());
+                }
+                count = mChannel.read(input);
+            }
+            if (count < 0) {
+                throw new IOException("Unexpected end of packet entity.");
+            }
+        }
+    }
+
+    /**
+     * 最近一次压缩的数据
+     */
+    byte[] output() {
+        return mOutput;
+    }
+
+    /**
+     * 包的最后一帧或者被终止的帧回收时调用，重置后交还给 {@link DeflaterPool}
+     */
+    void release() {
+        mPacket = null;
+        mChannel = null;
+        mDeflater.reset();
+        mPool.recycle(this);
+    }
+
+    void end() {
+        mDeflater.end();
+    }
+
+}
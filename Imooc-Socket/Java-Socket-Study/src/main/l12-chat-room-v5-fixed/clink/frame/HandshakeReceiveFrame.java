@@ -0,0 +1,54 @@
+package clink.frame;
+
+import clink.core.IoArgs;
+
+/**
+ * 握手接收帧，更高版本的帧体可能更长，只解析已知的部分
+ */
+public class HandshakeReceiveFrame extends AbsReceiveFrame {
+
+    private byte[] body = new byte[HandshakeSendFrame.HANDSHAKE_BODY_LENGTH];
+
+    HandshakeReceiveFrame() {
+    }
+
+    @Override
+    protected void onReset() {
+        if (body.length < getBodyLength()) {
+            body = new byte[getBodyLength()];
+        }
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int offset = getBodyLength() - bodyRemaining;
+        return args.writeTo(body, offset, bodyRemaining);
+    }
+
+    /**
+     * 帧体是否完整，不完整的握手按照不支持任何特性处理
+     */
+    public boolean isValid() {
+        return getBodyLength() >= HandshakeSendFrame.HANDSHAKE_BODY_LENGTH;
+    }
+
+    public byte getVersion() {
+        return body[0];
+    }
+
+    public int getFeatures() {
+        return readInt(1);
+    }
+
+    public int getMaxFrameLength() {
+        return readInt(5);
+    }
+
+    private int readInt(int offset) {
+        return ((body[offset] & 0xFF) << 24)
+                | ((body[offset + 1] & 0xFF) << 16)
+                | ((body[offset + 2] & 0xFF) << 8)
+                | (body[offset + 3] & 0xFF);
+    }
+
+}
@@ -0,0 +1,42 @@
+package clink.frame;
+
+import clink.core.Frame;
+import clink.core.IoArgs;
+
+/**
+ * 握手发送帧，连接建立后最先发送，告知对方本端的协议版本、支持的特性以及能够接收的单帧最大长度
+ */
+public class HandshakeSendFrame extends AbsSendFrame {
+
+    /*帧体：版本 1 字节，特性 4 字节，单帧最大长度 4 字节*/
+    static final int HANDSHAKE_BODY_LENGTH = 9;
+
+    private final byte[] body = new byte[HANDSHAKE_BODY_LENGTH];
+
+    public HandshakeSendFrame(byte version, int features, int maxFrameLength) {
+        // 握手不属于任何包，与心跳一样使用 0 作为标识
+        super(new byte[]{0, HANDSHAKE_BODY_LENGTH, Frame.TYPE_COMMAND_HANDSHAKE, 0, 0, 0});
+        body[0] = version;
+        writeInt(features, 1);
+        writeInt(maxFrameLength, 5);
+    }
+
+    private void writeInt(int value, int offset) {
+        body[offset] = (byte) (value >> 24);
+        body[offset + 1] = (byte) (value >> 16);
+        body[offset + 2] = (byte) (value >> 8);
+        body[offset + 3] = (byte) value;
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int offset = getBodyLength() - bodyRemaining;
+        return args.readFrom(body, offset, bodyRemaining);
+    }
+
+    @Override
+    public Frame nextFrame() {
+        return null;
+    }
+
+}
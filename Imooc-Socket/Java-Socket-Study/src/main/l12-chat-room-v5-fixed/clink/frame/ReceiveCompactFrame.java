@@ -0,0 +1,49 @@
+package clink.frame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import clink.core.IoArgs;
+import clink.core.ReceivePacket;
+
+/**
+ * 紧凑帧的接收，帧体为包类型加上完整的实体数据，接收完成后直接写入新建的包
+ */
+public class ReceiveCompactFrame extends AbsReceiveFrame {
+
+    /*复用的帧体缓冲，只在遇到更长的帧体时扩容*/
+    private byte[] body = new byte[256];
+
+    ReceiveCompactFrame() {
+    }
+
+    @Override
+    protected void onReset() {
+        if (body.length < getBodyLength()) {
+            body = new byte[getBodyLength()];
+        }
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int offset = getBodyLength() - bodyRemaining;
+        return args.writeTo(body, offset, bodyRemaining);
+    }
+
+    public byte getPacketType() {
+        return body[0];
+    }
+
+    public long getPacketLength() {
+        return getBodyLength() - 1;
+    }
+
+    /**
+     * 把实体数据写入到包中
+     */
+    public void writeTo(ReceivePacket<?, ?> packet) throws IOException {
+        OutputStream stream = packet.open();
+        stream.write(body, 1, getBodyLength() - 1);
+    }
+
+}
@@ -1,7 +1,11 @@
 package clink.frame;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import clink.core.IoArgs;
 
@@ -12,17 +16,102 @@ public class ReceiveEntityFrame extends AbsReceiveFrame {
 
     private WritableByteChannel channel;
 
-    ReceiveEntityFrame(byte[] header) {
-        super(header);
+    /*文件接收时按位置写入*/
+    private FileChannel fileChannel;
+    private long filePosition;
+
+    /*压缩的实体数据，解压后再写入通道*/
+    private Inflater inflater;
+    private byte[] compressed;
+    private ByteBuffer inflated;
+    // 解压后写入的数据量
+    private int inflatedLength;
+
+    ReceiveEntityFrame() {
+    }
+
+    @Override
+    protected void onReset() {
+        channel = null;
+        fileChannel = null;
+        filePosition = 0;
+        inflater = null;
+        inflatedLength = 0;
     }
 
     public void bindPacketChannel(WritableByteChannel channel) {
         this.channel = channel;
     }
 
+    /**
+     * 绑定文件通道，当前帧的数据写入到文件的 position 位置
+     */
+    public void bindPacketChannel(FileChannel fileChannel, long position) {
+        this.channel = fileChannel;
+        this.fileChannel = fileChannel;
+        this.filePosition = position;
+    }
+
+    /**
+     * 帧体是压缩的数据，需要使用包对应的 inflater 解压，需要在绑定通道之后调用
+     */
+    public void bindInflater(Inflater inflater) {
+        this.inflater = inflater;
+        if (inflater != null && compressed == null) {
+            compressed = new byte[16 * 1024];
+            inflated = ByteBuffer.allocate(32 * 1024);
+        }
+    }
+
+    /**
+     * 当前帧写入到包中的实体数据长度，压缩时为解压后的长度
+     */
+    public int getEntityLength() {
+        return inflater == null ? getBodyLength() : inflatedLength;
+    }
+
     @Override
     protected int consumeBody(IoArgs args) throws IOException {
-        return channel == null ? args.setEmpty(bodyRemaining) : args.writeTo(channel);
+        // IoArgs 中可能包含后续帧的数据，只消费属于当前帧的部分
+        if (channel == null) {
+            return args.setEmpty(bodyRemaining);
+        }
+        if (inflater != null) {
+            return inflateBody(args);
+        }
+        if (fileChannel != null) {
+            int count = args.writeTo(fileChannel, filePosition, bodyRemaining);
+            filePosition += count;
+            return count;
+        }
+        return args.writeTo(channel, bodyRemaining);
+    }
+
+    private int inflateBody(IoArgs args) throws IOException {
+        int count = args.writeTo(compressed, 0, Math.min(bodyRemaining, compressed.length));
+        inflater.setInput(compressed, 0, count);
+        try {
+            int length;
+            while ((length = inflater.inflate(inflated.array(), 0, inflated.capacity())) > 0) {
+                inflated.clear();
+                inflated.limit(length);
+                writeInflated();
+                inflatedLength += length;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return count;
+    }
+
+    private void writeInflated() throws IOException {
+        while (inflated.hasRemaining()) {
+            if (fileChannel != null) {
+                filePosition += fileChannel.write(inflated, filePosition);
+            } else {
+                channel.write(inflated);
+            }
+        }
     }
 
 }
@@ -1,35 +1,86 @@
 package clink.frame;
 
+import java.io.IOException;
+
 import clink.core.Frame;
 import clink.core.IoArgs;
 
 /**
- * 接收帧构建工厂
+ * 接收帧构建工厂，每个连接一份。
+ * <p>
+ * 一个连接同一时刻只有一个帧在接收，所以每种帧只需要一个实例，帧头直接从 IoArgs 读入复用的帧中，稳定接收时不产生任何对象。
+ * 非线程安全，只在连接的接收线程中使用。
  */
 public class ReceiveFrameFactory {
 
+    private final byte[] headerBuffer = new byte[Frame.FRAME_HEADER_LENGTH];
+
+    private final ReceiveHeaderFrame headerFrame = new ReceiveHeaderFrame();
+    private final ReceiveEntityFrame entityFrame = new ReceiveEntityFrame();
+    private final CancelReceiveFrame cancelFrame = new CancelReceiveFrame();
+    private final ReceiveCompactFrame compactFrame = new ReceiveCompactFrame();
+    private final RejectReceiveFrame rejectFrame = new RejectReceiveFrame();
+    private final HandshakeReceiveFrame handshakeFrame = new HandshakeReceiveFrame();
+    private final SkipReceiveFrame skipFrame = new SkipReceiveFrame();
+
     /**
-     * 使用传入的帧头数据构建接收帧
+     * 使用传入的帧头数据构建接收帧，返回的帧在下一次调用前有效
      *
      * @param args IoArgs至少需要有6字节数据可读
      * @return 构建的帧头数据
+     * @throws IOException 帧头不合法，之后的数据已经无法解析
      */
-    public static AbsReceiveFrame createInstance(IoArgs args) {
-        byte[] buffer = new byte[Frame.FRAME_HEADER_LENGTH];
-        args.writeTo(buffer, 0);
-        byte type = buffer[2];//第三个字节是类型标识
+    public AbsReceiveFrame obtain(IoArgs args) throws IOException {
+        args.writeTo(headerBuffer, 0, Frame.FRAME_HEADER_LENGTH);
+        return obtain(headerBuffer);
+    }
+
+    /**
+     * 使用已经读取完整的帧头数据构建接收帧，用于帧头被拆分在两次读取中的情况
+     *
+     * @param header 6字节的帧头数据
+     * @return 构建的帧头数据
+     * @throws IOException 帧头不合法，之后的数据已经无法解析
+     */
+    public AbsReceiveFrame obtain(byte[] header) throws IOException {
+        byte type = header[2];//第三个字节是类型标识
+        if ((header[3] & Frame.FLAG_LENGTH_SCALED) != 0 && type != Frame.TYPE_PACKET_ENTITY) {
+            // 只有实体帧可以是大帧，避免为其他帧分配过大的缓冲区
+            throw new IOException("Scaled length is only allowed for entity frame, type:" + type);
+        }
+        if (header[5] < 0) {
+            // 标识的最高位不能使用，超出 MAX_WIDE_IDENTIFIER
+            throw new IOException("Identifier out of range, high byte:" + (header[5] & 0xFF));
+        }
+        AbsReceiveFrame frame;
         switch (type) {
             case Frame.TYPE_PACKET_HEADER:
-                return new ReceiveHeaderFrame(buffer);
+                frame = headerFrame;
+                break;
             case Frame.TYPE_PACKET_ENTITY:
-                return new ReceiveEntityFrame(buffer);
+                frame = entityFrame;
+                break;
+            case Frame.TYPE_PACKET_COMPACT:
+                frame = compactFrame;
+                break;
             case Frame.TYPE_COMMAND_SEND_CANCEL:
-                return new CancelReceiveFrame(buffer);
+                frame = cancelFrame;
+                break;
+            case Frame.TYPE_COMMAND_RECEIVE_REJECT:
+                frame = rejectFrame;
+                break;
+            case Frame.TYPE_COMMAND_HANDSHAKE:
+                frame = handshakeFrame;
+                break;
             case Frame.TYPE_COMMAND_HEARTBEAT:
                 return HeartbeatReceiveFrame.INSTANCE;
             default:
-                throw new UnsupportedOperationException("Unsupported frame type:" + type);
+                // 更高版本新增的帧，跳过帧体
+                frame = skipFrame;
+                break;
         }
+        frame.reset(header);
+        return frame;
     }
 
 }
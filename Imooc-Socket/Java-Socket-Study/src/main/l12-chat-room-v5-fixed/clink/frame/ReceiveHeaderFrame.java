@@ -4,17 +4,23 @@ import clink.core.IoArgs;
 
 public class ReceiveHeaderFrame extends AbsReceiveFrame {
 
-    private final byte[] body;
+    /*复用的帧体缓冲，只在遇到更长的帧体时扩容*/
+    private byte[] body = new byte[SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH];
 
-    public ReceiveHeaderFrame(byte[] header) {
-        super(header);
-        body = new byte[getBodyLength()];
+    ReceiveHeaderFrame() {
+    }
+
+    @Override
+    protected void onReset() {
+        if (body.length < getBodyLength()) {
+            body = new byte[getBodyLength()];
+        }
     }
 
     @Override
     protected int consumeBody(IoArgs args) {
-        int offset = body.length - bodyRemaining;
-        return args.writeTo(body, offset);
+        int offset = getBodyLength() - bodyRemaining;
+        return args.writeTo(body, offset, bodyRemaining);
     }
 
     /**
@@ -37,11 +43,12 @@ public class ReceiveHeaderFrame extends AbsReceiveFrame {
     }
 
     /**
-     * 获取额外的头部信息
+     * 获取额外的头部信息，帧会被复用，所以有额外信息时需要拷贝一份
      */
     public byte[] getPacketHeaderInfo() {
-        if (body.length > SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH) {
-            byte[] headerInfo = new byte[body.length - SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH];
+        int length = getBodyLength();
+        if (length > SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH) {
+            byte[] headerInfo = new byte[length - SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH];
             System.arraycopy(body, SendHeaderFrame.PACKET_HEADER_FRAME_MIN_LENGTH,
                     headerInfo, 0, headerInfo.length);
             return headerInfo;
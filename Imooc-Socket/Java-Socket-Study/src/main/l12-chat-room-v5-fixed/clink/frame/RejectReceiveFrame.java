@@ -0,0 +1,18 @@
+package clink.frame;
+
+import clink.core.IoArgs;
+
+/**
+ * 对方拒绝接收我们发送的包，没有帧体。
+ */
+public class RejectReceiveFrame extends AbsReceiveFrame {
+
+    RejectReceiveFrame() {
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        return 0;
+    }
+
+}
@@ -0,0 +1,29 @@
+package clink.frame;
+
+import clink.core.Frame;
+import clink.core.IoArgs;
+
+/**
+ * 拒绝接收帧，通知对方停止发送对应的包
+ */
+public class RejectSendFrame extends AbsSendFrame {
+
+    public RejectSendFrame(short identifier) {
+        super(
+                0,
+                Frame.TYPE_COMMAND_RECEIVE_REJECT,
+                Frame.FLAG_NONE,
+                identifier);
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        return 0;
+    }
+
+    @Override
+    public Frame nextFrame() {
+        return null;
+    }
+
+}
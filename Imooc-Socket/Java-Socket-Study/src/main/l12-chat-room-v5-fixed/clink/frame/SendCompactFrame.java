@@ -0,0 +1,105 @@
+package clink.frame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.core.Packet;
+import clink.core.SendPacket;
+import clink.utils.Recycler;
+
+/**
+ * 紧凑帧，一帧携带一个完整的小包，不再需要单独的头帧与实体帧。
+ * <p>
+ * 帧体结构：包类型一个字节，之后为包的全部实体数据，包的长度为帧体长度减一。
+ * 帧体在构建时就拷贝了包的数据，所以开始发送后即使包被取消，也会完整地发送这一帧。
+ */
+public class SendCompactFrame extends AbsSendPacketFrame {
+
+    private static final Recycler<SendCompactFrame> RECYCLER = new Recycler<SendCompactFrame>(64) {
+        @Override
+        protected SendCompactFrame newObject(Handle<SendCompactFrame> handle) {
+            return new SendCompactFrame(handle);
+        }
+    };
+
+    private final Recycler.Handle<SendCompactFrame> handle;
+
+    /*复用的帧体缓冲，只在遇到更长的包时扩容*/
+    private byte[] body = new byte[256];
+
+    private boolean isRecycled;
+
+    private SendCompactFrame(Recycler.Handle<SendCompactFrame> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 包可以使用一帧发送时，从对象池中获取一个紧凑帧
+     *
+     * @param maxPacketLength 允许使用紧凑帧的最大包长度
+     * @return 包的类型、长度不满足条件或者不支持 {@link SendPacket#entityBuffer(long, int)} 时返回 null
+     */
+    public static SendCompactFrame obtain(short identifier, SendPacket<?> packet, int maxPacketLength) {
+        byte type = packet.getType();
+        long length = packet.getLength();
+        if ((type != Packet.TYPE_MEMORY_BYTES && type != Packet.TYPE_MEMORY_STRING)
+                || length > Math.min(maxPacketLength, Frame.MAX_CAPACITY - 1)) {
+            return null;
+        }
+
+        ByteBuffer buffer;
+        try {
+            buffer = packet.entityBuffer(0, (int) length);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (buffer == null) {
+            return null;
+        }
+
+        SendCompactFrame frame = RECYCLER.get();
+        frame.isRecycled = false;
+        int bodyLength = (int) length + 1;
+        frame.init(bodyLength, Frame.TYPE_PACKET_COMPACT, Frame.FLAG_NONE, identifier, packet);
+        if (frame.body.length < bodyLength) {
+            frame.body = new byte[bodyLength];
+        }
+        frame.body[0] = type;
+        buffer.get(frame.body, 1, (int) length);
+        return frame;
+    }
+
+    @Override
+    public synchronized boolean handle(IoArgs args) throws IOException {
+        if (packet == null && !isSending()) {
+            return true;
+        }
+        // 已经开始发送的帧不受取消影响，继续发送完整的数据
+        return handleFrame(args);
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        int offset = getBodyLength() - bodyRemaining;
+        return args.readFrom(body, offset, bodyRemaining);
+    }
+
+    @Override
+    protected Frame buildNextFrame() {
+        return null;
+    }
+
+    @Override
+    public synchronized void recycle() {
+        if (isRecycled) {
+            return;
+        }
+        isRecycled = true;
+        packet = null;
+        handle.recycle(this);
+    }
+
+}
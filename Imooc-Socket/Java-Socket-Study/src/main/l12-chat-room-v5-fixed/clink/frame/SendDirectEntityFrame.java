@@ -31,10 +31,18 @@ public class SendDirectEntityFrame extends AbsSendPacketFrame {
     @Override
     protected int consumeBody(IoArgs args) throws IOException {
         if (packet == null) {
-            // 已终止当前帧，则填充假数据
+            // 已终止当前帧，则填充假数据，帧会缩短到能一次写入 IoArgs，正常不会走到这里
             return args.fillEmpty(bodyRemaining);
         }
-        return args.readFrom(channel);
+        return args.readFrom(channel, bodyRemaining);
+    }
+
+    @Override
+    protected void fitBodyLength(int maxBodyLength) {
+        if (getBodyLength() > maxBodyLength) {
+            // 直流的下一帧根据剩余可读的数据构建，缩短的部分自然由下一帧发送
+            init(maxBodyLength, Frame.TYPE_PACKET_ENTITY, Frame.FLAG_NONE, getBodyIdentifier());
+        }
     }
 
     @Override
@@ -1,11 +1,15 @@
 package clink.frame;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 
 import clink.core.Frame;
 import clink.core.IoArgs;
 import clink.core.SendPacket;
+import clink.utils.Recycler;
 
 /**
  * @author Ztiany
@@ -14,21 +18,91 @@ import clink.core.SendPacket;
  */
 public class SendEntityFrame extends AbsSendPacketFrame {
 
-    private final ReadableByteChannel mChannel;
-    private final long mUnConsumeEntityLength;
+    /**
+     * 实体数据不小于该长度时才以附加分段的方式聚合写出，太小的数据拷贝的开销小于多一个分段的开销
+     */
+    private static final int MIN_ATTACH_LENGTH = 1024;
 
+    private static final Recycler<SendEntityFrame> RECYCLER = new Recycler<SendEntityFrame>(64) {
+        @Override
+        protected SendEntityFrame newObject(Handle<SendEntityFrame> handle) {
+            return new SendEntityFrame(handle);
+        }
+    };
+
+    private final Recycler.Handle<SendEntityFrame> handle;
+
+    /*实体数据的流，只有在包不支持 entityBuffer 与 fileChannel 时才打开*/
+    private ReadableByteChannel mChannel;
+    private long mUnConsumeEntityLength;
+    /*当前帧在实体数据中的起始位置*/
+    private long mEntityPosition;
+
+    /*压缩发送时，当前帧的帧体为 mDeflater 最近一次压缩的数据*/
+    private EntityDeflater mDeflater;
+
+    /*不压缩时单帧的最大长度，大于 MAX_CAPACITY 时使用按单位计算长度的大帧*/
+    private int mMaxFrameLength;
+
+    private boolean isRecycled;
 
-    SendEntityFrame(short identifier, long entityLength, ReadableByteChannel channel, SendPacket<?> packet) {
-        super(
-                (int) Math.min(entityLength, Frame.MAX_CAPACITY)/*一个帧的大小肯定是有规定的，不大于65535*/,
+    private SendEntityFrame(Recycler.Handle<SendEntityFrame> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取一个实体帧，帧填充完成后由 {@link #recycle()} 回收
+     *
+     * @param channel  实体数据的流，为 null 时在需要时打开
+     * @param deflater 不为 null 时压缩发送，当前帧负责压缩下一段数据
+     * @param maxFrameLength 不压缩时单帧的最大长度
+     * @return 压缩失败时返回取消帧，结束该包的发送
+     */
+    static Frame obtain(short identifier, long entityLength, ReadableByteChannel channel, SendPacket<?> packet,
+                        EntityDeflater deflater, int maxFrameLength) {
+        long entityPosition = packet.getLength() - entityLength;
+        int bodyLength;
+        int inputLength;
+        byte flag = Frame.FLAG_NONE;
+        if (deflater == null) {
+            /*一个帧的大小肯定是有规定的，不大于65535*/
+            bodyLength = inputLength = (int) Math.min(entityLength, Frame.MAX_CAPACITY);
+            if (entityLength > Frame.MAX_CAPACITY && maxFrameLength > Frame.MAX_CAPACITY) {
+                // 大帧的长度必须是单位长度的整数倍，剩余不足的部分使用普通帧发送
+                int scaledLength = (int) Math.min(entityLength, maxFrameLength) & ~(Frame.LENGTH_SCALE_UNIT - 1);
+                if (scaledLength > Frame.MAX_CAPACITY) {
+                    bodyLength = inputLength = scaledLength;
+                    flag = Frame.FLAG_LENGTH_SCALED;
+                }
+            }
+        } else {
+            flag = Frame.FLAG_COMPRESSED;
+            inputLength = (int) Math.min(entityLength, EntityDeflater.MAX_INPUT_LENGTH);
+            try {
+                bodyLength = deflater.deflate(entityPosition, inputLength);
+            } catch (IOException e) {
+                e.printStackTrace();
+                deflater.release();
+                return new CancelSendFrame(identifier);
+            }
+        }
+
+        SendEntityFrame frame = RECYCLER.get();
+        frame.isRecycled = false;
+        frame.init(
+                bodyLength,
                 Frame.TYPE_PACKET_ENTITY,
-                Frame.FLAG_NONE,
+                flag,
                 identifier,
                 packet);
 
-        /*还未消费的实体长度 = 剩余实体的总长度 - 当前包的body长度*/
-        mUnConsumeEntityLength = entityLength - bodyRemaining;
-        this.mChannel = channel;
+        /*还未消费的实体长度 = 剩余实体的总长度 - 当前帧携带的实体长度*/
+        frame.mUnConsumeEntityLength = entityLength - inputLength;
+        frame.mEntityPosition = entityPosition;
+        frame.mChannel = channel;
+        frame.mDeflater = deflater;
+        frame.mMaxFrameLength = maxFrameLength;
+        return frame;
     }
 
     @Override
@@ -37,20 +111,77 @@ public class SendEntityFrame extends AbsSendPacketFrame {
         if (mUnConsumeEntityLength == 0) {
             return null;
         }
-        // 将未消费的长度用于构建下一帧
-        return new SendEntityFrame(getBodyIdentifier(), mUnConsumeEntityLength, mChannel, packet);
+        // 将未消费的长度用于构建下一帧，压缩器交给下一帧
+        EntityDeflater deflater = mDeflater;
+        mDeflater = null;
+        return obtain(getBodyIdentifier(), mUnConsumeEntityLength, mChannel, packet, deflater, mMaxFrameLength);
+    }
+
+    @Override
+    protected void fitBodyLength(int maxBodyLength) {
+        int bodyLength = getBodyLength();
+        if (mDeflater != null || bodyLength <= maxBodyLength) {
+            // 压缩数据的长度在压缩时已经确定，不能缩短
+            return;
+        }
+        int length = maxBodyLength;
+        byte flag = Frame.FLAG_NONE;
+        if (length > Frame.MAX_CAPACITY) {
+            length &= ~(Frame.LENGTH_SCALE_UNIT - 1);
+            flag = Frame.FLAG_LENGTH_SCALED;
+        }
+        // 缩短的部分交给下一帧发送
+        mUnConsumeEntityLength += bodyLength - length;
+        init(length, Frame.TYPE_PACKET_ENTITY, flag, getBodyIdentifier());
+    }
+
+    @Override
+    public synchronized void recycle() {
+        if (isRecycled) {
+            return;
+        }
+        isRecycled = true;
+        packet = null;
+        mChannel = null;
+        if (mDeflater != null) {
+            // 最后一帧或者被终止的帧持有压缩器
+            mDeflater.release();
+            mDeflater = null;
+        }
+        handle.recycle(this);
     }
 
     @Override
     protected int consumeBody(IoArgs args) throws IOException {
+        if (mDeflater != null) {
+            // 压缩数据已经在内存中，被终止后也发送真实数据，保证接收方的解压缩状态不被破坏
+            int offset = getBodyLength() - bodyRemaining;
+            return args.readFrom(mDeflater.output(), offset, bodyRemaining);
+        }
         if (packet == null) {
             // 已终止当前帧，则填充假数据。
-            //对于被 abort 的帧处理有两种方式：
-            //1 把未发送的数据读取到内存中，之后从内存中读取数据发送（可靠性更高，内存消耗较大）
-            //2 填充假数据发送，通过一定机制，告诉客户端哪一段是假数据，可以丢弃。
+            // 帧会在开始发送时缩短到能一次写入 IoArgs，正常不会走到这里
             return args.fillEmpty(bodyRemaining);
         }
-        return args.readFrom(mChannel);
+        int count = Math.min(bodyRemaining, args.remaining());
+        long position = mEntityPosition + getBodyLength() - bodyRemaining;
+        FileChannel fileChannel = packet.fileChannel();
+        if (fileChannel != null) {
+            // 文件数据由 transferTo 直接写出
+            return args.attach(fileChannel, position, count);
+        }
+        ByteBuffer buffer = packet.entityBuffer(position, count);
+        if (buffer == null) {
+            if (mChannel == null) {
+                mChannel = Channels.newChannel(packet.open());
+            }
+            return args.readFrom(mChannel, bodyRemaining);
+        }
+        // 堆内存的数据在写出时 JDK 还会拷贝一次到直接内存，所以只有在发送缓冲区也是堆内存时才附加，否则直接拷贝
+        if (count >= MIN_ATTACH_LENGTH && (buffer.isDirect() || !args.isDirect())) {
+            return args.attach(buffer);
+        }
+        return args.readFrom(buffer);
     }
 
 }
@@ -1,14 +1,12 @@
 package clink.frame;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 
 import clink.core.Frame;
 import clink.core.IoArgs;
 import clink.core.Packet;
 import clink.core.SendPacket;
+import clink.utils.Recycler;
 
 /**
  * 头帧，任何一个包都从头帧开始构建。
@@ -22,23 +20,79 @@ public class SendHeaderFrame extends AbsSendPacketFrame {
     //头部实体长度：5个字节用来表示实体数据长度，1个字节用来表示包的类型
     static final int PACKET_HEADER_FRAME_MIN_LENGTH = 6;/*头帧的实体数据最小长度*/
 
-    private final byte[] body;
+    private static final Recycler<SendHeaderFrame> RECYCLER = new Recycler<SendHeaderFrame>(64) {
+        @Override
+        protected SendHeaderFrame newObject(Handle<SendHeaderFrame> handle) {
+            return new SendHeaderFrame(handle);
+        }
+    };
+
+    private final Recycler.Handle<SendHeaderFrame> handle;
+
+    // 头部对应的数据信息长度，帧复用时一起复用，包带有额外的头部信息时扩容
+    private byte[] body = new byte[PACKET_HEADER_FRAME_MIN_LENGTH];
+
+    /*实体帧的最大长度*/
+    private int mMaxEntityFrameLength;
+
+    /*压缩发送时从中获取压缩器，不压缩时为 null*/
+    private DeflaterPool mDeflaterPool;
+
+    private boolean isRecycled;
 
     public SendHeaderFrame(short identifier, SendPacket sendPacket) {
-        super(PACKET_HEADER_FRAME_MIN_LENGTH,
-                Frame.TYPE_PACKET_HEADER,
-                Frame.FLAG_NONE,
-                identifier,
-                sendPacket);
+        this.handle = null;
+        init(identifier, sendPacket, null, Frame.MAX_CAPACITY);
+    }
+
+    private SendHeaderFrame(Recycler.Handle<SendHeaderFrame> handle) {
+        this.handle = handle;
+    }
 
-        // 头部对应的数据信息长度
-        body = new byte[bodyRemaining];
+    /**
+     * 从对象池中获取一个头帧，帧填充完成后由 {@link #recycle()} 回收
+     */
+    public static SendHeaderFrame obtain(short identifier, SendPacket<?> sendPacket) {
+        return obtain(identifier, sendPacket, null, Frame.MAX_CAPACITY);
+    }
+
+    /**
+     * @param deflaterPool         不为 null 时包的实体数据压缩发送，压缩器从中获取
+     * @param maxEntityFrameLength 不压缩时实体帧的最大长度，大于 {@link Frame#MAX_CAPACITY} 时使用大帧
+     */
+    public static SendHeaderFrame obtain(short identifier, SendPacket<?> sendPacket, DeflaterPool deflaterPool, int maxEntityFrameLength) {
+        SendHeaderFrame frame = RECYCLER.get();
+        frame.isRecycled = false;
+        frame.init(identifier, sendPacket, deflaterPool, maxEntityFrameLength);
+        return frame;
+    }
+
+    private void init(short identifier, SendPacket<?> sendPacket, DeflaterPool deflaterPool, int maxEntityFrameLength) {
+        mMaxEntityFrameLength = maxEntityFrameLength;
+        mDeflaterPool = deflaterPool;
 
         //提取包的信息
         final long packetLength = sendPacket.getLength();
         final byte packetType = sendPacket.getType();
         final byte[] packetHeaderInfo = sendPacket.headerInfo();
 
+        int bodyLength = PACKET_HEADER_FRAME_MIN_LENGTH;
+        if (packetHeaderInfo != null) {
+            if (packetHeaderInfo.length > Frame.MAX_CAPACITY - PACKET_HEADER_FRAME_MIN_LENGTH) {
+                throw new IllegalArgumentException("Packet header info is too long: " + packetHeaderInfo.length);
+            }
+            bodyLength += packetHeaderInfo.length;
+        }
+        if (body.length < bodyLength) {
+            body = new byte[bodyLength];
+        }
+
+        init(bodyLength,
+                Frame.TYPE_PACKET_HEADER,
+                deflaterPool != null ? Frame.FLAG_COMPRESSED : Frame.FLAG_NONE,
+                identifier,
+                sendPacket);
+
         // 头5字节存储长度信息低5字节（40位）数据
         body[0] = (byte) (packetLength >> 32);
         body[1] = (byte) (packetLength >> 24);
@@ -48,7 +102,7 @@ public class SendHeaderFrame extends AbsSendPacketFrame {
         //包类型
         body[5] = packetType;
 
-        //额外的头部信息，现在没有用
+        //额外的头部信息，接收方由 ReceiveHeaderFrame#getPacketHeaderInfo 取出
         if (packetHeaderInfo != null) {
             System.arraycopy(packetHeaderInfo, 0, body, PACKET_HEADER_FRAME_MIN_LENGTH, packetHeaderInfo.length);
         }
@@ -60,18 +114,31 @@ public class SendHeaderFrame extends AbsSendPacketFrame {
         if (type == Packet.TYPE_STREAM_DIRECT) {// 直流类型
             return SendDirectEntityFrame.buildEntityFrame(packet, getBodyIdentifier());
         } else { // 普通数据类型
-            InputStream stream = packet.open();
-            ReadableByteChannel channel = Channels.newChannel(stream);
-            //头帧的下一帧就是数据帧的，所以它的下一帧数据帧就肯定是打开通开，开始数据读写。
-            return new SendEntityFrame(getBodyIdentifier(), packet.getLength(), channel, packet);
+            //头帧的下一帧就是数据帧，实体数据的流在需要时才打开，内存数据直接从 entityBuffer 读取
+            // 压缩发送时由实体帧负责读取并压缩数据
+            EntityDeflater deflater = mDeflaterPool != null ? mDeflaterPool.take(packet) : null;
+            return SendEntityFrame.obtain(getBodyIdentifier(), packet.getLength(), null, packet, deflater, mMaxEntityFrameLength);
         }
     }
 
     @Override
     protected int consumeBody(IoArgs args) throws IOException {
         int count = bodyRemaining;
-        int offset = body.length - count;
+        int offset = getBodyLength() - count;
         return args.readFrom(body, offset, count);
     }
 
+    @Override
+    public synchronized void recycle() {
+        if (isRecycled) {
+            return;
+        }
+        isRecycled = true;
+        packet = null;
+        mDeflaterPool = null;
+        if (handle != null) {
+            handle.recycle(this);
+        }
+    }
+
 }
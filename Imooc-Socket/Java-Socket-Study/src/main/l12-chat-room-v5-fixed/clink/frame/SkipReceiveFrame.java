@@ -0,0 +1,18 @@
+package clink.frame;
+
+import clink.core.IoArgs;
+
+/**
+ * 不认识的帧，丢弃帧体，使旧版本能够与新增了帧类型的新版本通信
+ */
+public class SkipReceiveFrame extends AbsReceiveFrame {
+
+    SkipReceiveFrame() {
+    }
+
+    @Override
+    protected int consumeBody(IoArgs args) {
+        return args.setEmpty(bodyRemaining);
+    }
+
+}
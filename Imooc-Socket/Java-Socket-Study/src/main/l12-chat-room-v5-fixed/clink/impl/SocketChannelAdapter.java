@@ -123,13 +123,18 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
 
         @Override
         protected void onProviderIo(IoArgs args) {
+            IoArgs.IoArgsEventProcessor processor = receiveIoEventListener;
             if (isClosed.get()) {
+                if (args != null && processor != null) {
+                    // 读取到一半时已关闭，交还未读完的 IoArgs
+                    attach = null;
+                    processor.onConsumeFailed(args, new IOException("Current channel is closed!"));
+                }
                 return;
             }
 
             mLastReadTime = System.currentTimeMillis();
 
-            IoArgs.IoArgsEventProcessor processor = receiveIoEventListener;
             if (processor == null) {
                 return;
             }
@@ -144,6 +149,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     processor.onConsumeFailed(null, new IOException("ProvideIoArgs is null."));
                 } else {
                     int count = args.readFrom(channel);
+                    onTransferred(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台
@@ -154,19 +160,19 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                     if (args.remained() && args.isNeedConsumeRemaining()) {
                         //没有读完，下次再读
                         attach = args;
-                        ioProvider.registerOutput(channel, this);
-                        System.out.println("register again");
+                        ioProvider.registerInput(channel, this);
                     } else {
                         //读完置为null
                         attach = null;
                         // 读取完成回调
-                        System.out.println("send completed");
                         processor.onConsumeCompleted(args);
                     }
 
                 }
-            } catch (IOException ignore) {
+            } catch (IOException e) {
                 CloseUtils.close(SocketChannelAdapter.this);
+                // 关闭之后再交还 IoArgs，接收调度器此时已关闭，会释放其缓冲区
+                processor.onConsumeFailed(args, e);
             }
         }
     };// mHandleInputCallback end
@@ -199,6 +205,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                 } else {
 
                     int count = args.writeTo(channel);
+                    onTransferred(count);
 
                     if (count == 0) {
                         // 本次回调就代表可以进行数据消费，但是如果一个数据也没有产生消费，那么我们尝试输出一句语句到控制台。
@@ -210,7 +217,7 @@ public class SocketChannelAdapter implements Sender, Receiver, Cloneable {
                         // 附加当前未消费完成的args
                         attach = args;
                         // 再次注册数据发送
-                        ioProvider.registerInput(channel, this);
+                        ioProvider.registerOutput(channel, this);
                     } else {
                         // 设置为null
                         attach = null;
@@ -2,15 +2,28 @@ package clink.impl.async;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
+import clink.core.ConnectorConfig;
 import clink.core.Frame;
 import clink.core.IoArgs;
+import clink.core.Packet;
 import clink.core.SendPacket;
-import clink.core.ds.BytePriorityNode;
+import clink.core.alloc.IoArgsAllocator;
+import clink.core.ds.BytePriorityQueue;
+import clink.frame.AbsSendFrame;
 import clink.frame.AbsSendPacketFrame;
 import clink.frame.CancelSendFrame;
+import clink.frame.DeflaterPool;
+import clink.frame.HandshakeSendFrame;
 import clink.frame.HeartbeatSendFrame;
+import clink.frame.RejectSendFrame;
+import clink.frame.SendCompactFrame;
 import clink.frame.SendEntityFrame;
 import clink.frame.SendHeaderFrame;
 
@@ -25,16 +38,122 @@ class AsyncPacketReader implements Closeable {
 
     private final PacketProvider mPacketProvider;
 
-    private volatile IoArgs mIoArgs = new IoArgs();
+    private final IoArgs mIoArgs;
 
-    private volatile BytePriorityNode<Frame> mNode;//帧队列
-    private volatile int mNodeSize = 0;//节点数量
+    /**
+     * 批量发送时，IoArgs 剩余空间小于该值则不再开始新的帧，避免实体帧被缩短得过小或者跨越两次写出
+     */
+    private static final int MIN_BATCH_FRAME_SPACE = Frame.FRAME_HEADER_LENGTH + 1024;
+
+    /**
+     * 是否批量发送：一个 IoArgs 中连续填充多个帧，直到填满或者没有待发送的帧
+     */
+    private final boolean isBatch;
+
+    /**
+     * 不大于该长度的内存包使用紧凑帧发送，0 表示不使用。开启握手时，对方支持后才使用
+     */
+    private int mCompactFrameLength;
+
+    /**
+     * 不小于该长度的包压缩发送，0 表示不压缩。开启握手时，对方支持后才使用
+     */
+    private int mCompressThreshold;
+
+    /**
+     * 压缩发送的包使用的压缩器，包发送完成后留给之后的包复用
+     */
+    private final DeflaterPool mDeflaterPool = new DeflaterPool();
+    private final boolean isCompressFile;
+
+    /**
+     * 对方能够接收的单帧最大长度，开启握手时，对方支持大帧后才会大于 {@link Frame#MAX_CAPACITY}
+     */
+    private int mPeerMaxFrameLength;
+
+    /**
+     * 对方是否能够处理拒绝帧，不能时拒绝接收的包只在本端丢弃
+     */
+    private boolean isRejectSupported;
+
+    // 服务端是否已经回复了握手
+    private boolean isHandshakeReplied;
+
+    /**
+     * 连接配置，用于获取按包类型的实体帧最大长度
+     */
+    private final ConnectorConfig mConfig;
+
+    /**
+     * 数据已经全部填充到 IoArgs、但还未真正写出的包。IoArgs 中可能附加了包的文件区间，写出之前不能关闭包
+     */
+    private final List<SendPacket> mFilledPackets = new ArrayList<>();
+
+    /**
+     * 发送途中被取消的包，同样可能还有文件区间附加在未写出的 IoArgs 中，与 {@link #mFilledPackets} 一起在写出后以失败结束
+     */
+    private final List<SendPacket> mCancelledPackets = new ArrayList<>();
+
+    // 高优先级连续发送多少帧后让低优先级发送一帧
+    private static final int STARVATION_LIMIT = 8;
+
+    /**
+     * 帧队列，按包的优先级分层，同一优先级内轮流发送
+     */
+    private final BytePriorityQueue<Frame> mFrameQueue = new BytePriorityQueue<>(SendPacket.PRIORITY_HIGHEST + 1, STARVATION_LIMIT);
+
+    /**
+     * 当前正在填充的帧，一帧开始填充后必须填充完成才能填充其他帧
+     */
+    private Frame mCurrentFrame;
+
+    /**
+     * 包与其队列中的帧的对应关系，用于取消发送时直接找到对应的帧（每一个包同时最多只会有一个帧，因为帧是顺序发送的）
+     */
+    private final Map<SendPacket, AbsSendPacketFrame> mPacketFrames = new IdentityHashMap<>();
 
-    //唯一标识从 1 开始，最大为 255，理论上最大支持并发  255 个 packet 同时发送
-    private short mLastIdentifier = 0;//记录最后一次唯一标识
+    // 队列中是否已经有心跳帧
+    private boolean isHeartbeatQueued;
+
+    /**
+     * 最多同时发送的包的数量，多个包的帧轮流发送，避免大文件阻塞后面的小消息
+     */
+    private final int mMaxConcurrentPackets;
+    // 正在发送的包的数量
+    private int mActivePacketCount = 0;
+
+    //唯一标识从 1 开始，最大为 mMaxIdentifier，对方支持宽标识后从 255 扩大到 MAX_WIDE_IDENTIFIER
+    private int mMaxIdentifier = Frame.MAX_IDENTIFIER;
+    private int mLastIdentifier = 0;//记录最后一次唯一标识
+    // 正在使用的唯一标识，包的最后一帧或取消帧填充后才释放，接收方按顺序收到这些帧，所以释放的标识在接收方也已经结束
+    private final BitSet mUsedIdentifiers = new BitSet(Frame.MAX_IDENTIFIER + 1);
+    // 包的最后一帧还没有填充或移除的标识
+    private final BitSet mSendingIdentifiers = new BitSet(Frame.MAX_IDENTIFIER + 1);
+    // 取消帧还没有填充的标识，两者都结束后才释放
+    private final BitSet mCancellingIdentifiers = new BitSet(Frame.MAX_IDENTIFIER + 1);
+
+    AsyncPacketReader(PacketProvider packetProvider, IoArgsAllocator allocator) {
+        this(packetProvider, allocator, ConnectorConfig.DEFAULT);
+    }
 
-    AsyncPacketReader(PacketProvider packetProvider) {
+    /**
+     * @param config 连接配置，决定是否批量发送、发送缓冲区大小以及最多同时发送的包的数量
+     */
+    AsyncPacketReader(PacketProvider packetProvider, IoArgsAllocator allocator, ConnectorConfig config) {
         mPacketProvider = Objects.requireNonNull(packetProvider);
+        this.isBatch = config.isSendBatch();
+        this.mMaxConcurrentPackets = config.getMaxConcurrentSendPackets();
+        this.isCompressFile = config.isCompressFile();
+        this.mConfig = config;
+        if (config.isHandshake()) {
+            // 握手完成之前只使用原始的帧格式
+            mPeerMaxFrameLength = Frame.MAX_CAPACITY;
+        } else {
+            // 不握手时由使用者保证对方支持配置的特性
+            // 宽标识不是配置项，只在握手后使用
+            applyFeatures(Frame.FEATURES_SUPPORTED & ~Frame.FEATURE_WIDE_IDENTIFIER, Frame.MAX_SCALED_CAPACITY);
+        }
+        mIoArgs = allocator.allocate(config.getSendBufferSize());
     }
 
     /**
@@ -44,103 +163,201 @@ class AsyncPacketReader implements Closeable {
      * @param packet 待取消的packet
      */
     synchronized void cancel(SendPacket packet) {
-        if (mNodeSize == 0) {
+        AbsSendPacketFrame sendPacketFrame = mPacketFrames.remove(packet);
+        if (sendPacketFrame == null) {
+            return;
+        }
+        // 中止后帧仍然留在队列中，轮到它时不会发送任何数据，并在那时结束该包
+        boolean removable = sendPacketFrame.abort();
+        //removable表示是否完美中止
+        if (removable && sendPacketFrame instanceof SendHeaderFrame) {
+            // 头帧，并且未被发送任何数据，直接取消后不需要添加取消发送帧
+            // 中止后帧不再持有该包，之后填充帧与关闭时都不会再结束它，需要在这里结束
+            mPacketProvider.completedPacket(packet, false);
+            return;
+        }
+        if (sendPacketFrame instanceof SendCompactFrame) {
+            // 紧凑帧要么不发送，要么完整发送，接收方没有需要取消的包
+            mPacketProvider.completedPacket(packet, false);
             return;
         }
-        //遍历找到那个需要取消的packet对应的frame
-        for (BytePriorityNode<Frame> x = mNode, before = null; x != null; before = x, x = x.next) {
-            Frame frame = x.item;
-            if (frame instanceof AbsSendPacketFrame) {//是发包的frame才需要被取消
-
-                AbsSendPacketFrame sendPacketFrame = (AbsSendPacketFrame) frame;
-
-                if (sendPacketFrame.getPacket() == packet) {//找到对应的帧（队列中对于每一个包，同时最多只会有一个帧，因为帧是顺序发送的。）
-
-                    boolean removable = sendPacketFrame.abort();
-                    //removable表示是否完美中止
-                    if (removable) {
-                        //是完美中止就移除吧
-                        removeFrame(x, before);
-                        if (sendPacketFrame instanceof SendHeaderFrame) {
-                            // 头帧，并且未被发送任何数据，直接取消后不需要添加取消发送帧
-                            break;
-                        }
-                    }//removable end
-
-                    //没有完美取消，或者完美取消的不是头帧，则需要发送一个取消帧告知接收方该包被取消了
-                    CancelSendFrame cancelSendFrame = new CancelSendFrame(sendPacketFrame.getBodyIdentifier());
-                    appendNewFrame(cancelSendFrame);
-                    // 取消则认为是意外终止，返回失败
-                    mPacketProvider.completedPacket(packet, false);
-                    break;
 
-                }//endPacketFrame.getPacket() == packet end
+        //没有完美取消，或者完美取消的不是头帧，则需要发送一个取消帧告知接收方该包被取消了
+        CancelSendFrame cancelSendFrame = new CancelSendFrame(sendPacketFrame.getBodyIdentifier());
+        appendNewFrame(cancelSendFrame);
+        // 取消则认为是意外终止，返回失败。取消可能来自其他线程，等当前 IoArgs 写出后再结束，避免关闭正在传输的文件
+        synchronized (mFilledPackets) {
+            mCancelledPackets.add(packet);
+        }
+    }
+
+    /**
+     * 对方拒绝接收某个包，按照取消的方式停止发送该包。
+     * <p>
+     * 唯一标识是循环分配的，同一个标识需要在分配完其他所有标识之后才会再次使用，所以迟到的拒绝不会误伤新的包。
+     *
+     * @param identifier 包的唯一标识
+     */
+    synchronized void reject(short identifier) {
+        for (AbsSendPacketFrame frame : mPacketFrames.values()) {
+            if (frame.getBodyIdentifier() == identifier) {
+                cancel(frame.getPacket());
+                return;
             }
         }
     }
 
-    private synchronized void removeFrame(BytePriorityNode<Frame> remove, BytePriorityNode<Frame> before) {
-        if (before == null) {
-            mNode = remove.next;
-        } else {
-            before.next = remove.next;
+    /**
+     * 请求发送一个拒绝接收帧，拒绝帧使用最高优先级
+     *
+     * @param identifier 拒绝接收的包的唯一标识
+     */
+    synchronized boolean requestSendRejectFrame(short identifier) {
+        if (!isRejectSupported) {
+            // 旧版本的对端不认识拒绝帧，由本端丢弃该包的数据
+            return false;
         }
-        mNodeSize--;
-        //如果队列空了，看看是否还有需要发送到包。
-        if (mNode == null) {
-            requestTakePacket();
+        appendNewFrame(new RejectSendFrame(identifier));
+        return true;
+    }
+
+    /**
+     * 请求发送握手帧
+     */
+    synchronized void requestSendHandshakeFrame() {
+        appendNewFrame(new HandshakeSendFrame(Frame.PROTOCOL_VERSION, Frame.FEATURES_SUPPORTED, Frame.MAX_SCALED_CAPACITY));
+    }
+
+    /**
+     * 收到对方的握手信息，之后的包只使用双方都支持的特性，已经开始发送的包不受影响。
+     * 不发起握手的一端（服务端）在此回复握手，没有收到握手的连接不会发送握手帧
+     *
+     * @return 是否添加了回复的握手帧
+     */
+    synchronized boolean onPeerHandshake(byte version, int features, int maxFrameLength) {
+        if (!mConfig.isHandshake()) {
+            return false;
+        }
+        applyFeatures(features, maxFrameLength);
+        if (mConfig.isHandshakeInitiator() || isHandshakeReplied) {
+            return false;
+        }
+        isHandshakeReplied = true;
+        requestSendHandshakeFrame();
+        return true;
+    }
+
+    private void applyFeatures(int features, int maxFrameLength) {
+        mCompactFrameLength = (features & Frame.FEATURE_COMPACT_FRAME) != 0 ? mConfig.getCompactFrameLength() : 0;
+        mCompressThreshold = (features & Frame.FEATURE_COMPRESS) != 0 ? mConfig.getCompressThreshold() : 0;
+        mPeerMaxFrameLength = (features & Frame.FEATURE_LARGE_FRAME) != 0 ?
+                Math.max(Frame.MAX_CAPACITY, maxFrameLength) : Frame.MAX_CAPACITY;
+        isRejectSupported = (features & Frame.FEATURE_RECEIVE_REJECT) != 0;
+        // 标识只会扩大，已经在使用的标识不受影响
+        if ((features & Frame.FEATURE_WIDE_IDENTIFIER) != 0) {
+            mMaxIdentifier = Frame.MAX_WIDE_IDENTIFIER;
         }
     }
 
     /**
-     * 请求从 {@link #mPacketProvider}队列中拿一份Packet进行发送
+     * 请求从 {@link #mPacketProvider}队列中拿Packet进行发送，直到同时发送的包达到上限
      *
      * @return 如果当前Reader中有可以用于网络发送的数据，则返回True
      */
-    boolean requestTakePacket() {
-        //如果mNodeSize>=1，直接返回true，表示还有要发送的数据，mNodeSize可以再设置得大一点，用于支持多个线程并发发送。
-        synchronized (this) {
-            if (mNodeSize >= 1) {
-                return true;
+    synchronized boolean requestTakePacket() {
+        // 同时发送的包不能超过可用标识的数量
+        int maxConcurrentPackets = Math.min(mMaxConcurrentPackets, mMaxIdentifier - 1);
+        while (mActivePacketCount < maxConcurrentPackets) {
+            SendPacket sendPacket = mPacketProvider.takePacket();
+            if (sendPacket == null) {
+                break;
+            }
+            short identifier = generateIdentifier();
+            //根据新的包，构建一个头帧（小包则构建一个紧凑帧）添加到节点中，新的帧在队尾，与正在发送的包的帧轮流发送
+            AbsSendPacketFrame frame = null;
+            boolean isCompress = isCompress(sendPacket);
+            if (mCompactFrameLength > 0 && !isCompress) {
+                frame = SendCompactFrame.obtain(identifier, sendPacket, mCompactFrameLength);
+            }
+            if (frame == null) {
+                frame = SendHeaderFrame.obtain(identifier, sendPacket, isCompress ? mDeflaterPool : null,
+                        Math.min(mConfig.getMaxEntityFrameLength(sendPacket.getType()), mPeerMaxFrameLength));
             }
+            appendNewFrame(frame);
+            mActivePacketCount++;
         }
+        return hasFrame();
+    }
 
-        SendPacket sendPacket = mPacketProvider.takePacket();
-        if (sendPacket != null) {
-            short identifier = generateIdentifier();
-            //根据新的包，构建一个头帧添加到节点中
-            SendHeaderFrame sendHeaderFrame = new SendHeaderFrame(identifier, sendPacket);
-            appendNewFrame(sendHeaderFrame);
+    /**
+     * 字符串、字节包以及开启文件压缩时的文件包，长度达到阈值时压缩发送
+     */
+    private boolean isCompress(SendPacket<?> packet) {
+        if (mCompressThreshold <= 0 || packet.getLength() < mCompressThreshold) {
+            return false;
         }
+        byte type = packet.getType();
+        return type == Packet.TYPE_MEMORY_STRING
+                || type == Packet.TYPE_MEMORY_BYTES
+                || (type == Packet.TYPE_STREAM_FILE && isCompressFile);
+    }
 
-        synchronized (this) {
-            return mNodeSize > 0;
+    private synchronized boolean hasFrame() {
+        return mCurrentFrame != null || !mFrameQueue.isEmpty();
+    }
+
+    /**
+     * 一个包的最后一帧已经填充或者被移除，释放其占用的并发数和唯一标识
+     */
+    private synchronized void finishPacket(AbsSendPacketFrame frame) {
+        mActivePacketCount--;
+        short identifier = frame.getBodyIdentifier();
+        mSendingIdentifiers.clear(identifier);
+        if (!mCancellingIdentifiers.get(identifier)) {
+            mUsedIdentifiers.clear(identifier);
+        }
+        SendPacket<?> packet = frame.getPacket();
+        if (packet != null) {
+            mPacketFrames.remove(packet);
         }
     }
 
-    boolean requestSendHeartbeatFrame() {
-        synchronized (this) {
-            for (BytePriorityNode<Frame> x = mNode; x != null; x = x.next) {
-                Frame frame = x.item;
-                if (frame.getBodyType() == Frame.TYPE_COMMAND_HEARTBEAT) {
-                    return false;
-                }
-            }
-            // 添加心跳帧
-            appendNewFrame(new HeartbeatSendFrame());
-            return true;
+    synchronized boolean requestSendHeartbeatFrame() {
+        if (isHeartbeatQueued) {
+            return false;
         }
+        // 添加心跳帧
+        appendNewFrame(new HeartbeatSendFrame());
+        isHeartbeatQueued = true;
+        return true;
     }
 
-    /*添加一个新的帧都队列中*/
+    /*添加一个新的帧到队列中，包的帧使用包的优先级，控制帧使用最高优先级*/
     private synchronized void appendNewFrame(Frame frame) {
-        BytePriorityNode<Frame> newNode = new BytePriorityNode<>(frame);
-        if (mNode != null) {
-            mNode.appendWithPriority(newNode);
-        } else {
-            mNode = newNode;
+        byte priority = SendPacket.PRIORITY_HIGHEST;
+        if (frame instanceof AbsSendPacketFrame) {
+            AbsSendPacketFrame packetFrame = (AbsSendPacketFrame) frame;
+            SendPacket<?> packet = packetFrame.getPacket();
+            if (packet != null) {
+                priority = (byte) Math.min(packet.getPriority(), SendPacket.PRIORITY_HIGH);
+                mPacketFrames.put(packet, packetFrame);
+            }
+        }
+        if (frame instanceof CancelSendFrame) {
+            mCancellingIdentifiers.set(((CancelSendFrame) frame).getBodyIdentifier());
+        }
+        mFrameQueue.offer(frame, priority);
+    }
+
+    /**
+     * 取消帧已经填充，对方会在之前的帧之后收到它。包的最后一帧也已移除时释放标识，否则由 {@link #finishPacket} 释放
+     */
+    private synchronized void finishCancel(CancelSendFrame frame) {
+        short identifier = frame.getBodyIdentifier();
+        mCancellingIdentifiers.clear(identifier);
+        if (!mSendingIdentifiers.get(identifier)) {
+            mUsedIdentifiers.clear(identifier);
         }
-        mNodeSize++;
     }
 
     /**
@@ -148,30 +365,50 @@ class AsyncPacketReader implements Closeable {
      */
     @Override
     public synchronized void close() {
-        BytePriorityNode<Frame> node = mNode;
-        while (node != null) {
-            Frame frame = mNode.item;
+        if (mCurrentFrame != null) {
+            mFrameQueue.offer(mCurrentFrame, SendPacket.PRIORITY_HIGHEST);
+            mCurrentFrame = null;
+        }
+        mFrameQueue.forEach(frame -> {
             if (frame instanceof AbsSendPacketFrame) {
-                ((AbsSendPacketFrame) frame).abort();
-                mPacketProvider.completedPacket(((AbsSendPacketFrame) frame).getPacket(), false);
+                AbsSendPacketFrame packetFrame = (AbsSendPacketFrame) frame;
+                SendPacket<?> packet = packetFrame.getPacket();
+                packetFrame.abort();
+                if (packet != null) {
+                    mPacketProvider.completedPacket(packet, false);
+                }
+                // 释放帧持有的资源，如压缩器
+                packetFrame.recycle();
             }
-            node = node.next;
-        }
-        mNode = null;
-        mNodeSize = 0;
+        });
+        mFrameQueue.clear();
+        mPacketFrames.clear();
+        isHeartbeatQueued = false;
+        mActivePacketCount = 0;
+        mUsedIdentifiers.clear();
+        mSendingIdentifiers.clear();
+        mCancellingIdentifiers.clear();
+        completeFilledPackets(false);
+        // 帧回收时已经交还了压缩器
+        mDeflaterPool.close();
+        mIoArgs.release();
     }
 
     /**
      * 构建一份Packet惟一标志
      *
-     * @return 标志为：1～255
+     * @return 标志为：1～mMaxIdentifier
      */
     private short generateIdentifier() {
-        short identifier = ++mLastIdentifier;
-        if (identifier == 255) {
-            mLastIdentifier = 0;
+        // 从上一次的标识之后查找空闲的标识，循环使用所有标识，尽量推迟同一个标识的复用
+        int identifier = mUsedIdentifiers.nextClearBit(mLastIdentifier + 1);
+        if (identifier > mMaxIdentifier) {
+            identifier = mUsedIdentifiers.nextClearBit(1);
         }
-        return identifier;
+        mUsedIdentifiers.set(identifier);
+        mSendingIdentifiers.set(identifier);
+        mLastIdentifier = identifier;
+        return (short) identifier;
     }
 
     /**
@@ -186,44 +423,126 @@ class AsyncPacketReader implements Closeable {
             return null;
         }
 
+        IoArgs args = mIoArgs;
         try {
-            //返回true表示该帧的数据消费完了，handle方法是同步的。
-            if (currentFrame.handle(mIoArgs)) {
-                //因为handle方法是同步的，不可能有两个线程同事进入到该条件块内
+            if (isBatch) {
+                // 使用整个缓冲区，连续填充多个帧
+                args.resetLimit();
+                args.startWriting();
+                do {
+                    if (!fillFrame(currentFrame, args)) {
+                        // 当前帧没有填充完，说明缓冲区已满
+                        break;
+                    }
+                } while (args.remaining() >= MIN_BATCH_FRAME_SPACE && (currentFrame = getCurrentFrame()) != null);
+            } else {
+                // 一次只填充一帧
+                args.limit(currentFrame.getConsumableLength());
+                args.startWriting();
+                fillFrame(currentFrame, args);
+            }
+            args.finishWriting();
+            return args;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
 
-                Frame nextFrame = currentFrame.nextFrame(); //nextFrame 方法是同步的
+    /**
+     * 把一帧的数据填充到 args 中
+     *
+     * @return 当前帧是否已经填充完成
+     */
+    private boolean fillFrame(Frame currentFrame, IoArgs args) throws IOException {
+        //返回true表示该帧的数据消费完了，handle方法是同步的。
+        if (currentFrame.handle(args)) {
+            //因为handle方法是同步的，不可能有两个线程同事进入到该条件块内
+            finishFrame(currentFrame);
+            return true;
+        }
+        return false;
+    }
 
-                if (nextFrame != null) {
-                    appendNewFrame(nextFrame);
-                } else if (currentFrame instanceof SendEntityFrame) {//是实体帧，且它的nextFrame 为 null，则说明其对应的包发送完了。
-                    mPacketProvider.completedPacket(((SendEntityFrame) currentFrame).getPacket(), true);
-                }
+    /**
+     * 一帧填充完成后构建并添加下一帧。
+     * 需要与 {@link #cancel(SendPacket)} 互斥：否则取消可能发生在构建下一帧与添加下一帧之间，
+     * 取消帧发出后下一帧又被加入队列，该包继续发送并且被结束两次
+     */
+    private synchronized void finishFrame(Frame currentFrame) {
+        Frame nextFrame = currentFrame.nextFrame(); //已经取消的包没有下一帧
 
-                //既然当前帧发完了，就弹出来
-                popCurrentFrame();
+        if (nextFrame != null) {
+            // 下一帧添加到队尾，实现多个包的帧轮流发送
+            appendNewFrame(nextFrame);
+        }
+        if (currentFrame instanceof AbsSendPacketFrame && !(nextFrame instanceof AbsSendPacketFrame)) {
+            // 包的最后一帧（直流结束时下一帧是取消帧）
+            finishPacket((AbsSendPacketFrame) currentFrame);
+        }
+        //是实体帧或紧凑帧，且它的nextFrame 为 null，则说明其对应的包填充完了。
+        if (nextFrame == null && (currentFrame instanceof SendEntityFrame || currentFrame instanceof SendCompactFrame)) {
+            SendPacket packet = ((AbsSendPacketFrame) currentFrame).getPacket();
+            if (packet != null) {
+                synchronized (mFilledPackets) {
+                    mFilledPackets.add(packet);
+                }
             }
+        }
 
-            return mIoArgs;
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (currentFrame instanceof CancelSendFrame) {
+            finishCancel((CancelSendFrame) currentFrame);
+        }
+
+        //既然当前帧发完了，就弹出来
+        popCurrentFrame();
+        // 帧头已经拷贝、帧体已经拷贝或附加到 args 中，帧本身不再被引用，可以回收
+        if (currentFrame instanceof AbsSendFrame) {
+            ((AbsSendFrame) currentFrame).recycle();
+        }
+    }
+
+    /**
+     * fillData 返回的 IoArgs 已经全部写出，其中填充完成的包发送完成
+     */
+    void onFillConsumed() {
+        completeFilledPackets(true);
+    }
+
+    private void completeFilledPackets(boolean isSucceed) {
+        SendPacket[] packets;
+        SendPacket[] cancelledPackets;
+        synchronized (mFilledPackets) {
+            if (mFilledPackets.isEmpty() && mCancelledPackets.isEmpty()) {
+                return;
+            }
+            packets = mFilledPackets.toArray(new SendPacket[0]);
+            mFilledPackets.clear();
+            cancelledPackets = mCancelledPackets.toArray(new SendPacket[0]);
+            mCancelledPackets.clear();
+        }
+        for (SendPacket packet : packets) {
+            mPacketProvider.completedPacket(packet, isSucceed);
+        }
+        for (SendPacket packet : cancelledPackets) {
+            mPacketProvider.completedPacket(packet, false);
         }
-        return null;
     }
 
     private synchronized void popCurrentFrame() {
-        mNode = mNode.next;
-        mNodeSize--;
-        //如果队列空了，看看是否还有需要发送到包。
-        if (mNode == null) {
-            requestTakePacket();
+        if (mCurrentFrame instanceof HeartbeatSendFrame) {
+            isHeartbeatQueued = false;
         }
+        mCurrentFrame = null;
+        //看看是否还有需要发送到包。
+        requestTakePacket();
     }
 
     private synchronized Frame getCurrentFrame() {
-        if (mNode != null) {
-            return mNode.item;
+        if (mCurrentFrame == null) {
+            mCurrentFrame = mFrameQueue.poll();
         }
-        return null;
+        return mCurrentFrame;
     }
 
     /**
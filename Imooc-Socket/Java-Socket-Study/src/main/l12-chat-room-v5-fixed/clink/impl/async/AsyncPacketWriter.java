@@ -3,42 +3,107 @@ package clink.impl.async;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
 
 import clink.core.Frame;
 import clink.core.IoArgs;
 import clink.core.ReceivePacket;
+import clink.core.alloc.IoArgsAllocator;
+import clink.core.alloc.ReceiveBufferPolicy;
+import clink.core.ds.SlotTable;
 import clink.frame.AbsReceiveFrame;
 import clink.frame.CancelReceiveFrame;
+import clink.frame.HandshakeReceiveFrame;
+import clink.frame.ReceiveCompactFrame;
 import clink.frame.HeartbeatReceiveFrame;
 import clink.frame.ReceiveEntityFrame;
 import clink.frame.ReceiveFrameFactory;
 import clink.frame.ReceiveHeaderFrame;
+import clink.frame.RejectReceiveFrame;
 
 /**
  * @author Ztiany
  * Email ztiany3@gmail.com
  * Date 2018/11/27 22:52
+ * <p>
+ * 只在连接的接收线程中使用：一次读取从 {@link #takeIoArgs()} 开始到 {@link #returnIoArgs()} 结束，期间的解析不加锁。
+ * 其他线程的 {@link #close()} 只做标记，读取中时由接收线程在读取结束时清理。
  */
 class AsyncPacketWriter implements Closeable {
 
     private final PacketProvider mPacketProvider;
-    private IoArgs mIoArgs = new IoArgs();
+    private final IoArgsAllocator mAllocator;
+    private final ReceiveBufferPolicy mBufferPolicy;
 
     /**
-     * 用于存储当前正在接收的包，key为包的唯一标识，value记录了正在接受包的必须信息。
+     * 是否为预读模式：一次读取尽可能多的数据，再从中循环解析出多个帧，不足的帧头、帧体留到下次读取后继续解析
      */
-    private final HashMap<Short, PacketModel> mPacketMap = new HashMap<>();
+    private final boolean isReadAhead;
+
+    /**
+     * 预读模式下被拆分到两次读取中的帧头
+     */
+    private final byte[] mHeaderCache = new byte[Frame.FRAME_HEADER_LENGTH];
+    private int mHeaderCacheLength;
+
+    /**
+     * 复用的接收帧
+     */
+    private final ReceiveFrameFactory mFrameFactory = new ReceiveFrameFactory();
+
+    private IoArgs mIoArgs;
+
+    /**
+     * 读取状态：IoArgs 交给通道读取数据到读取结束（数据消费完成）之间为读取中，此时关闭不能清理，
+     * 否则缓冲区会被其他连接复用时还在被写入，包也会在接收线程使用时被完成
+     */
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_READING = 1;
+    private static final int STATE_CLOSED = 2;
+    private final AtomicInteger mState = new AtomicInteger(STATE_IDLE);
+    private volatile boolean isCloseRequested;
+
+    private int mIoArgsSize;
+
+    /**
+     * 本次读取是否需要记录到 {@link #mBufferPolicy}，只记录帧体的读取，帧头固定 6 字节不具备参考意义
+     */
+    private boolean mRecordRead;
+
+    /**
+     * 用于存储当前正在接收的包，下标为包的唯一标识，值记录了正在接受包的必须信息。
+     * 只在接收线程中访问，关闭时的清理由 {@link #mState} 保证不与读取同时进行，不需要额外的同步。
+     */
+    private final SlotTable<PacketModel> mPacketTable = new SlotTable<>(Frame.MAX_WIDE_IDENTIFIER + 1);
 
     /**
      * 同一个时刻，只能接受一个帧的数据
      */
-    private volatile Frame frameTemp;
+    private Frame frameTemp;
+
+    /**
+     * 压缩接收的包使用的解压器，包结束后重置并留给之后的包复用，数量不超过同时接收的压缩包的数量
+     */
+    private final ArrayDeque<Inflater> mIdleInflaters = new ArrayDeque<>();
 
-    AsyncPacketWriter(PacketProvider packetProvider) {
+    AsyncPacketWriter(PacketProvider packetProvider, IoArgsAllocator allocator, ReceiveBufferPolicy bufferPolicy, boolean isReadAhead) {
         mPacketProvider = packetProvider;
+        mAllocator = allocator;
+        mBufferPolicy = bufferPolicy;
+        this.isReadAhead = isReadAhead;
+        mIoArgsSize = Math.max(bufferPolicy.guess(), Frame.FRAME_HEADER_LENGTH);
+        mIoArgs = allocateIoArgs(mIoArgsSize);
+    }
+
+    /**
+     * 预读模式下读到多少数据就处理多少，不需要填满
+     */
+    private IoArgs allocateIoArgs(int size) {
+        return mAllocator.allocate(size, !isReadAhead);
     }
 
     /**
@@ -46,19 +111,56 @@ class AsyncPacketWriter implements Closeable {
      * 当前帧如果没有则返回至少6字节长度的IoArgs，
      * 如果当前帧有，则返回当前帧未消费完成的区间
      *
-     * @return IoArgs
+     * @return IoArgs，已经关闭时返回 null
      */
-    synchronized IoArgs takeIoArgs() {
+    IoArgs takeIoArgs() {
+        if (isCloseRequested || !mState.compareAndSet(STATE_IDLE, STATE_READING)) {
+            // 关闭后缓冲区已经释放或者等待释放
+            return null;
+        }
+        if (isReadAhead) {
+            // 预读模式下上一次读取的数据总是已经全部消费（不足的帧头已经转存），直接使用整个缓冲区
+            resizeIoArgsIfNeed();
+            mIoArgs.resetLimit();
+            mRecordRead = true;
+            return mIoArgs;
+        }
+
         //如果frameTemp为null，则先解析帧的头六个字节，用于确定是什么类型的数据，用于接下来的帧的构建
         if (frameTemp == null) {
             mIoArgs.limit(Frame.FRAME_HEADER_LENGTH);
+            mRecordRead = false;
         } else {
+            resizeIoArgsIfNeed();
             mIoArgs.limit(frameTemp.getConsumableLength());
+            mRecordRead = true;
         }
         return mIoArgs;
     }
 
-    synchronized void consumeIoArgs(IoArgs args) {
+    /**
+     * 根据接收缓冲区策略调整 IoArgs 的大小，调用时 IoArgs 中的数据已经全部被消费
+     */
+    private void resizeIoArgsIfNeed() {
+        int size = Math.max(mBufferPolicy.guess(), Frame.FRAME_HEADER_LENGTH);
+        if (size != mIoArgsSize) {
+            mIoArgs.release();
+            mIoArgs = allocateIoArgs(size);
+            mIoArgsSize = size;
+        }
+    }
+
+    /**
+     * 消费 args 中的数据
+     *
+     * @throws IOException 收到不合法的帧头，连接的数据已经无法继续解析
+     */
+    void consumeIoArgs(IoArgs args) throws IOException {
+        if (mRecordRead) {
+            mRecordRead = false;
+            mBufferPolicy.record(args.remaining());
+        }
+
         if (frameTemp == null) {
             Frame temp;
             do {
@@ -102,12 +204,23 @@ class AsyncPacketWriter implements Closeable {
                                 headerFrame.getPacketLength(),
                                 headerFrame.getPacketHeaderInfo());
 
-                        //把包的标识添加到缓存容器中
-                        appendNewPacket(headerFrame.getBodyIdentifier(), packet);
+                        if (packet == null) {
+                            // 拒绝接收，之后该包的实体帧都会被丢弃
+                            rejectPacket(headerFrame.getBodyIdentifier());
+                        } else {
+                            //把包的标识添加到缓存容器中
+                            boolean isCompressed = (headerFrame.getBodyFlag() & Frame.FLAG_COMPRESSED) != 0;
+                            appendNewPacket(headerFrame.getBodyIdentifier(), packet, isCompressed);
+                        }
 
                     } else if (currentFrame instanceof ReceiveEntityFrame) {
                         // Packet 实体帧消费完成，则将当前帧消费到Packet
                         completeEntityFrame((ReceiveEntityFrame) currentFrame);
+                    } else if (currentFrame instanceof ReceiveCompactFrame) {
+                        // 紧凑帧携带了完整的包，直接构建并完成
+                        completeCompactFrame((ReceiveCompactFrame) currentFrame);
+                    } else if (currentFrame instanceof HandshakeReceiveFrame) {
+                        completeHandshakeFrame((HandshakeReceiveFrame) currentFrame);
                     }
 
                     // 接收完成后，直接退出循环，如果还有未消费数据则交给外层调度
@@ -126,36 +239,97 @@ class AsyncPacketWriter implements Closeable {
      * @param frame 已经消费的帧信息
      */
     private void completeEntityFrame(ReceiveEntityFrame frame) {
-        synchronized (mPacketMap) {//针对mPacketMap的同步
-            short identifier = frame.getBodyIdentifier();
-            int length = frame.getBodyLength();
-            PacketModel model = mPacketMap.get(identifier);
+        short identifier = frame.getBodyIdentifier();
+        int length = frame.getEntityLength();
+        PacketModel model = mPacketTable.get(identifier);
 
-            if (model == null) {
-                return;
-            }
+        if (model == null) {
+            return;
+        }
 
-            model.unreceivedLength -= length;
+        model.unreceivedLength -= length;
 
-            //如果包对应的 model 中未消费的长度为0了，则说明该包已经接收完毕了
-            //应该将其从map中移除，并且通知外部该包已经接收完毕
-            if (model.unreceivedLength <= 0) {
-                mPacketProvider.completedPacket(model.packet, true);
-                mPacketMap.remove(identifier);
-            }
+        //如果包对应的 model 中未消费的长度为0了，则说明该包已经接收完毕了
+        //应该将其从表中移除，并且通知外部该包已经接收完毕
+        if (model.unreceivedLength <= 0) {
+            mPacketProvider.completedPacket(model.packet, true);
+            mPacketTable.remove(identifier);
+            releaseModel(model);
         }
     }
 
     /**
-     * 添加一个新的Packet到当前缓冲区
+     * 紧凑帧接收完成时调用，包不需要进入 {@link #mPacketTable}
+     *
+     * @param frame 已经消费的紧凑帧
+     */
+    private void completeCompactFrame(ReceiveCompactFrame frame) throws IOException {
+        ReceivePacket packet = mPacketProvider.takePacket(frame.getPacketType(), frame.getPacketLength(), null);
+        if (packet == null) {
+            // 数据已经全部收到，拒绝时直接丢弃，不需要通知对方
+            return;
+        }
+        boolean isSucceed = false;
+        try {
+            frame.writeTo(packet);
+            isSucceed = true;
+        } finally {
+            mPacketProvider.completedPacket(packet, isSucceed);
+        }
+    }
+
+    /**
+     * 通知对方的握手信息，不完整的握手按照不支持任何特性处理
+     */
+    private void completeHandshakeFrame(HandshakeReceiveFrame frame) {
+        if (frame.isValid()) {
+            mPacketProvider.onReceivedHandshake(frame.getVersion(), frame.getFeatures(), frame.getMaxFrameLength());
+        } else {
+            mPacketProvider.onReceivedHandshake((byte) 0, 0, Frame.MAX_CAPACITY);
+        }
+    }
+
+    /**
+     * 拒绝接收某个包，清理可能残留的同一标识的包，并通知对方停止发送
      *
      * @param identifier Packet标志
-     * @param packet     Packet
      */
-    private void appendNewPacket(short identifier, ReceivePacket packet) {
-        synchronized (mPacketMap) {//针对mPacketMap的同步
-            PacketModel model = new PacketModel(packet);
-            mPacketMap.put(identifier, model);
+    private void rejectPacket(short identifier) {
+        PacketModel old = mPacketTable.remove(identifier);
+        if (old != null) {
+            mPacketProvider.completedPacket(old.packet, false);
+            releaseModel(old);
+        }
+        mPacketProvider.rejectPacket(identifier);
+    }
+
+    /**
+     * 添加一个新的Packet到当前缓冲区
+     *
+     * @param identifier   Packet标志
+     * @param packet       Packet
+     * @param isCompressed 实体数据是否压缩
+     */
+    private void appendNewPacket(short identifier, ReceivePacket packet, boolean isCompressed) {
+        PacketModel model = new PacketModel(packet, isCompressed ? takeInflater() : null);
+        PacketModel old = mPacketTable.put(identifier, model);
+        if (old != null) {
+            releaseModel(old);
+        }
+    }
+
+    private Inflater takeInflater() {
+        Inflater inflater = mIdleInflaters.pollLast();
+        return inflater == null ? new Inflater(true) : inflater;
+    }
+
+    /**
+     * 包结束后交还解压器
+     */
+    private void releaseModel(PacketModel model) {
+        if (model.inflater != null) {
+            model.inflater.reset();
+            mIdleInflaters.offerLast(model.inflater);
         }
     }
 
@@ -166,19 +340,24 @@ class AsyncPacketWriter implements Closeable {
      * @param args IoArgs
      * @return 返回新的帧
      */
-    private Frame buildNewFrame(IoArgs args) {
-        AbsReceiveFrame frame = ReceiveFrameFactory.createInstance(args);
-        if (frame instanceof CancelReceiveFrame) {
+    private Frame buildNewFrame(IoArgs args) throws IOException {
+        AbsReceiveFrame frame = readFrameHeader(args);
+        if (frame == null) {
+            // 帧头不完整，等待下一次读取
+            return null;
+        } else if (frame instanceof CancelReceiveFrame) {
             //取消则直接返回null
             cancelReceivePacket(frame.getBodyIdentifier());
             return null;
+        } else if (frame instanceof RejectReceiveFrame) {
+            mPacketProvider.onReceivedReject(frame.getBodyIdentifier());
+            return null;
         } else if (frame instanceof HeartbeatReceiveFrame) {
             mPacketProvider.onReceivedHeartbeat();
             return null;
         } else if (frame instanceof ReceiveEntityFrame) {
-            //如果是实体帧，则应该为其创建Channel
-            WritableByteChannel channel = getPacketChannel(frame.getBodyIdentifier());
-            ((ReceiveEntityFrame) frame).bindPacketChannel(channel);
+            //如果是实体帧，则应该为其绑定Channel
+            bindPacketChannel((ReceiveEntityFrame) frame);
         } /*else if (frame instanceof ReceiveHeaderFrame) {
             //否则 frame 就是头帧，直接返回即可
         }*/
@@ -186,16 +365,41 @@ class AsyncPacketWriter implements Closeable {
     }
 
     /**
-     * 获取Packet对应的输出通道，用以设置给帧进行数据传输
-     * 因为关闭当前map的原因，可能存在返回NULL
+     * 从 args 中读取帧头并构建帧，args 中的数据不足 6 字节时先缓存起来，等凑齐后再构建
+     *
+     * @param args IoArgs
+     * @return 帧头完整时返回构建的帧，否则返回 null
+     */
+    private AbsReceiveFrame readFrameHeader(IoArgs args) throws IOException {
+        if (mHeaderCacheLength == 0 && args.remaining() >= Frame.FRAME_HEADER_LENGTH) {
+            return mFrameFactory.obtain(args);
+        }
+        mHeaderCacheLength += args.writeTo(mHeaderCache, mHeaderCacheLength, Frame.FRAME_HEADER_LENGTH - mHeaderCacheLength);
+        if (mHeaderCacheLength < Frame.FRAME_HEADER_LENGTH) {
+            return null;
+        }
+        mHeaderCacheLength = 0;
+        return mFrameFactory.obtain(mHeaderCache);
+    }
+
+    /**
+     * 为实体帧绑定Packet对应的输出通道，用以进行数据传输
+     * 因为关闭当前map的原因，可能绑定为NULL，此时帧的数据被丢弃
      *
-     * @param identifier Packet对应的标志
-     * @return 通道
+     * @param frame 实体帧
      */
-    private WritableByteChannel getPacketChannel(short identifier) {
-        synchronized (mPacketMap) {
-            PacketModel model = mPacketMap.get(identifier);
-            return model == null ? null : model.channel;
+    private void bindPacketChannel(ReceiveEntityFrame frame) {
+        PacketModel model = mPacketTable.get(frame.getBodyIdentifier());
+        if (model == null) {
+            frame.bindPacketChannel(null);
+        } else if (model.fileChannel != null) {
+            // 同一个包的帧是顺序接收的，已接收的长度就是当前帧在文件中的位置
+            frame.bindPacketChannel(model.fileChannel, model.packet.getLength() - model.unreceivedLength);
+        } else {
+            frame.bindPacketChannel(model.channel);
+        }
+        if (model != null) {
+            frame.bindInflater(model.inflater);
         }
     }
 
@@ -205,26 +409,69 @@ class AsyncPacketWriter implements Closeable {
      * @param identifier Packet标志
      */
     private void cancelReceivePacket(short identifier) {
-        synchronized (mPacketMap) {
-            PacketModel model = mPacketMap.get(identifier);
-            if (model != null) {
-                ReceivePacket packet = model.packet;
-                mPacketProvider.completedPacket(packet, false);
-            }
+        PacketModel model = mPacketTable.remove(identifier);
+        if (model != null) {
+            ReceivePacket packet = model.packet;
+            mPacketProvider.completedPacket(packet, false);
+            releaseModel(model);
         }
     }
 
+    /**
+     * 关闭，读取中时只做标记，由接收线程在 {@link #returnIoArgs()} 中清理
+     */
     @Override
     public void close() {
-        synchronized (mPacketMap) {
-            Collection<PacketModel> values = mPacketMap.values();
-            for (PacketModel value : values) {
-                mPacketProvider.completedPacket(value.packet, false);
-            }
-            mPacketMap.clear();
+        isCloseRequested = true;
+        if (mState.compareAndSet(STATE_IDLE, STATE_CLOSED)) {
+            release();
         }
     }
 
+    /**
+     * 通道的一次读取已经结束（成功或者失败），{@link #takeIoArgs()} 返回的 IoArgs 不再被通道使用，
+     * 读取期间被关闭时在此清理
+     */
+    void returnIoArgs() {
+        if (!mState.compareAndSet(STATE_READING, STATE_IDLE)) {
+            return;
+        }
+        // 先结束读取再检查标记，与 close 的先标记再检查状态对应，两者至少有一方会进行清理
+        if (isCloseRequested && mState.compareAndSet(STATE_IDLE, STATE_CLOSED)) {
+            release();
+        }
+    }
+
+    /**
+     * 结束所有正在接收的包并释放资源，只会执行一次，且不会与读取同时进行
+     */
+    private void release() {
+        mPacketTable.forEach(model -> {
+            mPacketProvider.completedPacket(model.packet, false);
+            releaseModel(model);
+        });
+        mPacketTable.clear();
+        for (Inflater inflater : mIdleInflaters) {
+            inflater.end();
+        }
+        mIdleInflaters.clear();
+        mIoArgs.release();
+    }
+
+    /**
+     * 当前正在接收的包的数量，用于统计，在其他线程中调用时可能不是最新的值
+     */
+    int getReceivingPacketCount() {
+        return mPacketTable.size();
+    }
+
+    /**
+     * 同时接收的包的数量的峰值，用于统计，在其他线程中调用时可能不是最新的值
+     */
+    int getPeakReceivingPacketCount() {
+        return mPacketTable.peakSize();
+    }
+
     /**
      * Packet提供者
      */
@@ -236,7 +483,7 @@ class AsyncPacketWriter implements Closeable {
          * @param type       Packet类型
          * @param length     Packet长度
          * @param headerInfo Packet headerInfo
-         * @return 通过类型，长度，描述等信息得到一份接收Packet
+         * @return 通过类型，长度，描述等信息得到一份接收Packet，返回 null 表示拒绝接收
          */
         ReceivePacket takePacket(byte type, long length, byte[] headerInfo);
 
@@ -253,17 +500,45 @@ class AsyncPacketWriter implements Closeable {
          */
         void onReceivedHeartbeat();
 
+        /**
+         * 拒绝接收一个包，需要通知对方停止发送
+         *
+         * @param identifier Packet标志
+         */
+        void rejectPacket(short identifier);
+
+        /**
+         * 对方拒绝接收我们发送的包
+         *
+         * @param identifier Packet标志
+         */
+        void onReceivedReject(short identifier);
+
+        /**
+         * 收到对方的握手信息
+         *
+         * @param version        对方的协议版本
+         * @param features       对方支持的特性
+         * @param maxFrameLength 对方能够接收的单帧最大长度
+         */
+        void onReceivedHandshake(byte version, int features, int maxFrameLength);
+
     }
 
     /*针对接收包信息的封装*/
     static class PacketModel {
         final ReceivePacket packet;
         final WritableByteChannel channel;
-        volatile long unreceivedLength;
+        final FileChannel fileChannel;
+        // 实体数据压缩时用于解压，一个包的所有实体帧共用
+        final Inflater inflater;
+        long unreceivedLength;
 
-        PacketModel(ReceivePacket<?, ?> packet) {
+        PacketModel(ReceivePacket<?, ?> packet, Inflater inflater) {
             this.packet = packet;
-            this.channel = Channels.newChannel(packet.open());
+            this.fileChannel = packet.fileChannel();
+            this.channel = fileChannel != null ? fileChannel : Channels.newChannel(packet.open());
+            this.inflater = inflater;
             this.unreceivedLength = packet.getLength();
         }
 
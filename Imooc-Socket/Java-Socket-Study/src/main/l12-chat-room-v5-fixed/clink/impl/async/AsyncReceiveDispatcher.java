@@ -7,6 +7,8 @@ import clink.core.IoArgs;
 import clink.core.ReceiveDispatcher;
 import clink.core.ReceivePacket;
 import clink.core.Receiver;
+import clink.core.alloc.IoArgsAllocator;
+import clink.core.alloc.ReceiveBufferPolicy;
 import clink.utils.CloseUtils;
 
 /**
@@ -43,14 +45,57 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
             receivePacketCallback.onReceivedHeartbeat();
         }
 
+        @Override
+        public void rejectPacket(short identifier) {
+            receivePacketCallback.onRejectPacket(identifier);
+        }
+
+        @Override
+        public void onReceivedReject(short identifier) {
+            receivePacketCallback.onReceivedReject(identifier);
+        }
+
+        @Override
+        public void onReceivedHandshake(byte version, int features, int maxFrameLength) {
+            receivePacketCallback.onReceivedHandshake(version, features, maxFrameLength);
+        }
+
     };
 
-    private final AsyncPacketWriter asyncPacketWriter = new AsyncPacketWriter(packetProvider);
+    private final AsyncPacketWriter asyncPacketWriter;
+
+    /**
+     * 已经接收完成但还没有处理完成的包，由 backlogLock 保护，超过上限时暂停读取，降到上限的一半以下时恢复
+     */
+    private final boolean isBacklogBounded;
+    private final int maxBacklogPackets;
+    private final long maxBacklogBytes;
+    private final Object backlogLock = new Object();
+    private int backlogPackets;
+    private long backlogBytes;
+    private boolean isReadPaused;
+    // 暂停期间是否跳过了一次读取注册，恢复时需要补上
+    private boolean isReadSuspended;
+
+    public AsyncReceiveDispatcher(Receiver receiver, ReceivePacketCallback receivePacketCallback,
+                                  IoArgsAllocator allocator, ReceiveBufferPolicy bufferPolicy, boolean isReadAhead) {
+        this(receiver, receivePacketCallback, allocator, bufferPolicy, isReadAhead, 0, 0);
+    }
 
-    public AsyncReceiveDispatcher(Receiver receiver, ReceivePacketCallback receivePacketCallback) {
+    /**
+     * @param maxBacklogPackets 积压的包的数量上限，0 表示不限制
+     * @param maxBacklogBytes   积压的数据量上限，0 表示不限制
+     */
+    public AsyncReceiveDispatcher(Receiver receiver, ReceivePacketCallback receivePacketCallback,
+                                  IoArgsAllocator allocator, ReceiveBufferPolicy bufferPolicy, boolean isReadAhead,
+                                  int maxBacklogPackets, long maxBacklogBytes) {
+        this.asyncPacketWriter = new AsyncPacketWriter(packetProvider, allocator, bufferPolicy, isReadAhead);
         this.receiver = receiver;
         this.receiver.setReceiveListener(ioArgsEventProcessor);
         this.receivePacketCallback = receivePacketCallback;
+        this.isBacklogBounded = maxBacklogPackets > 0 || maxBacklogBytes > 0;
+        this.maxBacklogPackets = maxBacklogPackets > 0 ? maxBacklogPackets : Integer.MAX_VALUE;
+        this.maxBacklogBytes = maxBacklogBytes > 0 ? maxBacklogBytes : Long.MAX_VALUE;
     }
 
     @Override
@@ -63,6 +108,50 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
         registerReceive();
     }
 
+    @Override
+    public void onDeliveryPending(long length) {
+        synchronized (backlogLock) {
+            backlogPackets++;
+            backlogBytes += length;
+            if (!isReadPaused && (backlogPackets >= maxBacklogPackets || backlogBytes >= maxBacklogBytes)) {
+                // 只是标记，本次读取的数据处理完成后不再注册读取
+                isReadPaused = true;
+            }
+        }
+    }
+
+    @Override
+    public void onDeliveryCompleted(long length) {
+        boolean isResume = false;
+        synchronized (backlogLock) {
+            backlogPackets--;
+            backlogBytes -= length;
+            if (isReadPaused && backlogPackets <= maxBacklogPackets / 2 && backlogBytes <= maxBacklogBytes / 2) {
+                isReadPaused = false;
+                isResume = isReadSuspended;
+                isReadSuspended = false;
+            }
+        }
+        if (isResume && !isClosed.get()) {
+            registerReceive();
+        }
+    }
+
+    /**
+     * 一次读取处理完成后注册下一次读取，暂停期间跳过，由积压降下来的线程补上
+     */
+    private void registerReceiveIfNotPaused() {
+        if (isBacklogBounded) {
+            synchronized (backlogLock) {
+                if (isReadPaused) {
+                    isReadSuspended = true;
+                    return;
+                }
+            }
+        }
+        registerReceive();
+    }
+
     private void registerReceive() {
         try {
             receiver.postReceiveAsync();
@@ -82,8 +171,10 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
         @Override
         public IoArgs provideIoArgs() {
             IoArgs args = asyncPacketWriter.takeIoArgs();
-            // 一份新的IoArgs需要调用一次开始写入数据的操作
-            args.startWriting();
+            if (args != null) {
+                // 一份新的IoArgs需要调用一次开始写入数据的操作
+                args.startWriting();
+            }
             return args;
         }
 
@@ -95,27 +186,60 @@ public class AsyncReceiveDispatcher implements ReceiveDispatcher {
         @Override
         public void onConsumeCompleted(IoArgs args) {
             if (isClosed.get()) {
+                // 读取期间被关闭（如切换为桥接模式），读取结束后才能释放缓冲区
+                asyncPacketWriter.returnIoArgs();
                 return;
             }
 
             // 消费数据之前标示args数据填充完成，改变为可读取数据状态。
             args.finishWriting();
 
-            do {
-                asyncPacketWriter.consumeIoArgs(args);
-            } while (args.remained() && !isClosed.get());
+            try {
+                do {
+                    asyncPacketWriter.consumeIoArgs(args);
+                } while (args.remained() && !isClosed.get());
+            } catch (IOException e) {
+                // 对方发送了不合法的帧，之后的数据无法解析，只关闭当前连接
+                e.printStackTrace();
+                CloseUtils.close(receiver);
+                // 关闭之后再交还 IoArgs，此时写入者已经关闭，会在交还时清理
+                asyncPacketWriter.returnIoArgs();
+                return;
+            }
 
-            //再次注册
-            registerReceive();
+            // 数据已经全部消费，缓冲区可以在下一次读取时再交给通道
+            asyncPacketWriter.returnIoArgs();
+
+            //再次注册，积压太多时暂停读取，由 TCP 的窗口让对方放慢发送
+            registerReceiveIfNotPaused();
         }
 
         @Override
         public void onConsumeFailed(IoArgs ioArgs, Exception e) {
-            e.printStackTrace();
+            if (!isClosed.get()) {
+                e.printStackTrace();
+            }
+            if (ioArgs != null) {
+                asyncPacketWriter.returnIoArgs();
+            }
         }
 
     };
 
+    /**
+     * 当前正在接收的包的数量，用于统计
+     */
+    public int getReceivingPacketCount() {
+        return asyncPacketWriter.getReceivingPacketCount();
+    }
+
+    /**
+     * 同时接收的包的数量的峰值，用于统计
+     */
+    public int getPeakReceivingPacketCount() {
+        return asyncPacketWriter.getPeakReceivingPacketCount();
+    }
+
     private void closeAndNotify() {
         CloseUtils.close(this);
     }
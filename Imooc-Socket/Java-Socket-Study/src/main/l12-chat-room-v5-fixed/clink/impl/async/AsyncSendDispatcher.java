@@ -1,14 +1,25 @@
 package clink.impl.async;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import clink.core.ConnectorConfig;
 import clink.core.IoArgs;
+import clink.core.IoProvider;
+import clink.core.Packet;
+import clink.core.Scheduler;
 import clink.core.SendDispatcher;
+import clink.core.SendOverflowPolicy;
 import clink.core.SendPacket;
 import clink.core.Sender;
+import clink.core.alloc.IoArgsAllocator;
 import clink.utils.CloseUtils;
 
 /**
@@ -23,13 +34,65 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
 
     private final Queue<SendPacket> mSendPacketQueue = new ConcurrentLinkedQueue<>();
 
-    private final AsyncPacketReader mAsyncPacketReader = new AsyncPacketReader(this);
+    private final AsyncPacketReader mAsyncPacketReader;
 
     private final Sender mSender;
 
-    public AsyncSendDispatcher(Sender sender) {
+    /**
+     * 队列中等待发送的数据量，用于判断是否达到发送阈值
+     */
+    private final AtomicLong mQueuedLength = new AtomicLong();
+    private final int mFlushThreshold;
+    private final long mMaxFlushLatency;
+    private final Scheduler mScheduler;
+    private final AtomicBoolean mIsFlushScheduled = new AtomicBoolean(false);
+
+    /**
+     * 当前线程是否正在执行 {@link #requestSend()}，以及执行期间是否又有新的发送请求
+     */
+    private boolean mIsRequesting;
+    private boolean mIsRequestPending;
+
+    /**
+     * 发送队列有上限时，字符串、字节包从加入队列到发送完成为止占用的数据量，由 mPendingLock 保护
+     */
+    private final boolean isQueueBounded;
+    private final long mLowWatermark;
+    private final long mHighWatermark;
+    private final SendOverflowPolicy mOverflowPolicy;
+    private final Object mPendingLock = new Object();
+    private long mPendingLength;
+    private volatile boolean isWritable = true;
+    private final WritabilityListener mWritabilityListener;
+    // 因为发送队列溢出而丢弃的包的数量，用于统计
+    private final AtomicLong mOverflowDropCount = new AtomicLong();
+
+    public AsyncSendDispatcher(Sender sender, IoArgsAllocator allocator) {
+        this(sender, allocator, ConnectorConfig.DEFAULT, null);
+    }
+
+    public AsyncSendDispatcher(Sender sender, IoArgsAllocator allocator, ConnectorConfig config, Scheduler scheduler) {
+        this(sender, allocator, config, scheduler, null);
+    }
+
+    /**
+     * @param config              连接配置，决定是否批量发送以及发送的阈值和最大延迟
+     * @param scheduler           用于延迟发送的调度器，为 null 时不延迟
+     * @param writabilityListener 可写状态变化的监听，可以为 null
+     */
+    public AsyncSendDispatcher(Sender sender, IoArgsAllocator allocator, ConnectorConfig config, Scheduler scheduler,
+                               WritabilityListener writabilityListener) {
+        mAsyncPacketReader = new AsyncPacketReader(this, allocator, config);
         mSender = sender;
         mSender.setSendListener(this);
+        mScheduler = scheduler;
+        mFlushThreshold = config.getFlushThreshold();
+        mMaxFlushLatency = scheduler == null ? 0 : config.getMaxFlushLatency();
+        isQueueBounded = config.isSendQueueBounded();
+        mLowWatermark = config.getSendQueueLowWatermark();
+        mHighWatermark = config.getSendQueueHighWatermark();
+        mOverflowPolicy = config.getSendOverflowPolicy();
+        mWritabilityListener = writabilityListener;
     }
 
     /**
@@ -39,13 +102,220 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
      * @param packet 数据
      */
     @Override
-    public void send(SendPacket packet) {
+    public boolean send(SendPacket packet) {
+        if (isQueueBounded && !acquirePending(packet)) {
+            return false;
+        }
         //加入到队列中
         mSendPacketQueue.offer(packet);
+        mQueuedLength.addAndGet(packet.getLength());
         //请求发送
-        requestSend();
+        requestSendOrDelay();
+        return true;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return isWritable && !mIsClosed.get();
+    }
+
+    @Override
+    public long getOverflowDropCount() {
+        return mOverflowDropCount.get();
+    }
+
+    /**
+     * 只有字符串、字节包的数据在内存中，文件与直流包发送时才读取，不计入发送队列的数据量
+     */
+    private static long pendingLengthOf(SendPacket packet) {
+        byte type = packet.getType();
+        return type == Packet.TYPE_MEMORY_BYTES || type == Packet.TYPE_MEMORY_STRING ? packet.getLength() : 0;
+    }
+
+    /**
+     * 为新的包占用发送队列的数据量，可写时总是接收，不可写时按照溢出策略处理
+     *
+     * @return false 表示该包没有加入队列，已经被丢弃
+     */
+    private boolean acquirePending(SendPacket packet) {
+        long length = pendingLengthOf(packet);
+        if (length == 0) {
+            return true;
+        }
+
+        boolean accepted = true;
+        boolean closeSender = false;
+        boolean changed = false;
+        List<SendPacket> dropped = null;
+
+        synchronized (mPendingLock) {
+            if (mIsClosed.get()) {
+                accepted = false;
+            } else if (!isWritable) {
+                // 可写时总是接收，所以队列的数据量最多超过高水位线一个包
+                switch (mOverflowPolicy) {
+                    case BLOCK:
+                        if (IoProvider.HandleProviderCallback.isInIoCallback()) {
+                            // 只有 IO 线程能让队列降下来，在 IO 回调中阻塞会等待自己，按照 DROP_NEW 处理
+                            accepted = false;
+                            mOverflowDropCount.incrementAndGet();
+                        } else {
+                            accepted = awaitPending();
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        dropped = dropOldest(length);
+                        mOverflowDropCount.addAndGet(dropped.size());
+                        break;
+                    case DROP_NEW:
+                        accepted = false;
+                        mOverflowDropCount.incrementAndGet();
+                        break;
+                    case CLOSE:
+                        accepted = false;
+                        closeSender = true;
+                        mOverflowDropCount.incrementAndGet();
+                        break;
+                }
+            }
+            if (accepted) {
+                mPendingLength += length;
+            }
+            changed = updateWritability();
+        }
+
+        if (dropped != null) {
+            for (SendPacket oldest : dropped) {
+                closePacket(oldest);
+            }
+        }
+        if (!accepted) {
+            closePacket(packet);
+        }
+        if (closeSender) {
+            CloseUtils.close(mSender);
+        }
+        if (changed) {
+            notifyWritabilityChanged();
+        }
+        return accepted;
     }
 
+    /**
+     * 持有 mPendingLock 时调用，等待到重新可写，或者连接关闭
+     */
+    private boolean awaitPending() {
+        while (!isWritable) {
+            if (mIsClosed.get()) {
+                return false;
+            }
+            try {
+                mPendingLock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !mIsClosed.get();
+    }
+
+    /**
+     * 持有 mPendingLock 时调用，从队列头部移除还没有开始发送的字符串、字节包，直到能够放下 length 的数据，
+     * 正在发送的包不能丢弃，全部移除后仍然放不下时同样接收新的包
+     *
+     * @return 被移除的包，需要在锁外关闭
+     */
+    private List<SendPacket> dropOldest(long length) {
+        List<SendPacket> dropped = new ArrayList<>();
+        Iterator<SendPacket> iterator = mSendPacketQueue.iterator();
+        while (iterator.hasNext() && mPendingLength + length > mHighWatermark) {
+            SendPacket oldest = iterator.next();
+            long oldestLength = pendingLengthOf(oldest);
+            if (oldestLength == 0 || !mSendPacketQueue.remove(oldest)) {
+                continue;
+            }
+            mQueuedLength.addAndGet(-oldest.getLength());
+            mPendingLength -= oldestLength;
+            oldest.cancel();
+            dropped.add(oldest);
+        }
+        return dropped;
+    }
+
+    /**
+     * 包发送完成或者被丢弃，释放其占用的发送队列的数据量，降到低水位线以下时恢复可写
+     */
+    private void releasePending(SendPacket packet) {
+        if (!isQueueBounded) {
+            return;
+        }
+        long length = pendingLengthOf(packet);
+        if (length == 0) {
+            return;
+        }
+        boolean changed = false;
+        synchronized (mPendingLock) {
+            // 关闭时已经全部清零
+            if (mIsClosed.get()) {
+                return;
+            }
+            mPendingLength -= length;
+            changed = updateWritability();
+        }
+        if (changed) {
+            notifyWritabilityChanged();
+        }
+    }
+
+    /**
+     * 持有 mPendingLock 时调用，达到高水位线时不可写，降到低水位线以下时恢复可写并唤醒阻塞的发送线程
+     *
+     * @return 可写状态是否变化
+     */
+    private boolean updateWritability() {
+        if (isWritable && mPendingLength >= mHighWatermark) {
+            isWritable = false;
+            return true;
+        }
+        if (!isWritable && mPendingLength <= mLowWatermark) {
+            isWritable = true;
+            mPendingLock.notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 在锁外通知，多个线程的通知可能乱序，所以总是通知当前的状态
+     */
+    private void notifyWritabilityChanged() {
+        WritabilityListener listener = mWritabilityListener;
+        if (listener != null) {
+            listener.onWritabilityChanged(isWritable);
+        }
+    }
+
+    /**
+     * 队列中的数据量没有达到发送阈值时，延迟一段时间再发送，让更多的包合并到一次写出中
+     */
+    private void requestSendOrDelay() {
+        if (mMaxFlushLatency <= 0 || mQueuedLength.get() >= mFlushThreshold) {
+            requestSend();
+            return;
+        }
+        if (mIsFlushScheduled.compareAndSet(false, true)) {
+            mScheduler.schedule(mFlushRunnable, mMaxFlushLatency, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mIsFlushScheduled.set(false);
+            requestSend();
+        }
+    };
+
     /**
      * 发送心跳帧，将心跳帧放到帧发送队列进行发送
      */
@@ -61,6 +331,34 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     }
 
 
+    @Override
+    public void sendReject(short identifier) {
+        if (mAsyncPacketReader.requestSendRejectFrame(identifier)) {
+            requestSend();
+        }
+    }
+
+    @Override
+    public void onPacketRejected(short identifier) {
+        mAsyncPacketReader.reject(identifier);
+        // 可能添加了取消帧
+        requestSend();
+    }
+
+    @Override
+    public void sendHandshake() {
+        mAsyncPacketReader.requestSendHandshakeFrame();
+        requestSend();
+    }
+
+    @Override
+    public void onPeerHandshake(byte version, int features, int maxFrameLength) {
+        if (mAsyncPacketReader.onPeerHandshake(version, features, maxFrameLength)) {
+            // 回复握手
+            requestSend();
+        }
+    }
+
     /**
      * 取消Packet操作：如果还在队列中，代表Packet未进行发送，则直接标志取消，并返回即可，
      * 如果未在队列中，则让reader尝试扫描当前发送序列，查询是否当前Packet正在发送，
@@ -73,7 +371,9 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
         //完美取消
         boolean removed = mSendPacketQueue.remove(packet);
         if (removed) {
+            mQueuedLength.addAndGet(-packet.getLength());
             packet.cancel();
+            releasePending(packet);
             return;
         }
         //可能该包已经在发送了，调用包的发送者取消。
@@ -87,8 +387,10 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
         if (sendPacket == null) {
             return null;
         }
+        mQueuedLength.addAndGet(-sendPacket.getLength());
         //已经取消的包就不发送了
         if (sendPacket.isCanceled()) {
+            releasePending(sendPacket);
             return takePacket();
         }
         return sendPacket;
@@ -97,25 +399,45 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
     /*
     对于一个连接器内部的发送调度者，只有由一个线程将其从未发送状态置为发送中的状态，且进行这种状态转换的同时，只注册一次发送请求。
     也就是说，对一个 frame 完成一次完整的写操作，是单个线程的，只有这个写操作完成，才会注册下一次发送请求。
+
+    postSendAsync 会直接尝试写出，写完后在同一个调用栈中回调 onConsumeCompleted 再次进入 requestSend，
+    数据较多时会导致栈溢出，因此重入时只做标记，由最外层的调用循环处理。
     */
     private void requestSend() {
         synchronized (mIsSending) {
-            if (mIsSending.get() || mIsClosed.get()) {
+            // 持有锁的情况下 mIsRequesting 为 true，说明是同一个线程的重入调用
+            if (mIsRequesting) {
+                mIsRequestPending = true;
                 return;
             }
-            // 返回True代表当前有数据需要发送
-            if (mAsyncPacketReader.requestTakePacket()) {
-                try {
-                    //必须保证 postSendAsync 只被调用一次。
-                    mIsSending.set(true);
-                    // 可能立即就执行完成了
-                    boolean success = mSender.postSendAsync();
-                    if (!success) {
-                        mIsSending.set(false);
-                    }
-                } catch (IOException e) {
-                    closeAndNotify();
+            mIsRequesting = true;
+            try {
+                do {
+                    mIsRequestPending = false;
+                    doRequestSend();
+                } while (mIsRequestPending);
+            } finally {
+                mIsRequesting = false;
+            }
+        }
+    }
+
+    private void doRequestSend() {
+        if (mIsSending.get() || mIsClosed.get()) {
+            return;
+        }
+        // 返回True代表当前有数据需要发送
+        if (mAsyncPacketReader.requestTakePacket()) {
+            try {
+                //必须保证 postSendAsync 只被调用一次。
+                mIsSending.set(true);
+                // 可能立即就执行完成了
+                boolean success = mSender.postSendAsync();
+                if (!success) {
+                    mIsSending.set(false);
                 }
+            } catch (IOException e) {
+                closeAndNotify();
             }
         }
     }
@@ -135,6 +457,14 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
         if (mIsClosed.compareAndSet(false, true)) {
             mAsyncPacketReader.close();
             mSendPacketQueue.clear();
+            mQueuedLength.set(0);
+            if (isQueueBounded) {
+                synchronized (mPendingLock) {
+                    mPendingLength = 0;
+                    // 唤醒阻塞的发送线程
+                    mPendingLock.notifyAll();
+                }
+            }
             synchronized (mIsSending) {
                 mIsSending.set(false);
             }
@@ -168,6 +498,8 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
 
     @Override
     public void onConsumeCompleted(IoArgs args) {
+        // 数据已经写出，结束已经填充完成的包
+        mAsyncPacketReader.onFillConsumed();
         // 设置当前发送状态
         synchronized (mIsSending) {
             mIsSending.set(false);
@@ -183,7 +515,14 @@ public class AsyncSendDispatcher implements SendDispatcher, IoArgs.IoArgsEventPr
      */
     @Override
     public void completedPacket(SendPacket sendPacket, boolean isSucceed) {
+        releasePending(sendPacket);
+        closePacket(sendPacket);
+    }
+
+    private void closePacket(SendPacket sendPacket) {
         CloseUtils.close(sendPacket);
+        // 包的数据已经全部写出（或者已经放弃发送），不再被引用，可复用的包在此回收
+        sendPacket.recycle();
     }
 
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package clink.impl.bridge;
 
 
 import clink.core.*;
+import clink.core.alloc.IoArgsAllocator;
 import clink.utils.plugin.CircularByteBuffer;
 
 import java.io.IOException;
@@ -38,7 +39,7 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
     /**
      * 有数据则接收，无数据不强求填满，有多少返回多少
      */
-    private final IoArgs receiveIoArgs = new IoArgs(256, false);
+    private final IoArgs receiveIoArgs;
 
     private volatile Sender sender;
 
@@ -50,10 +51,12 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
     /**
      * 用以发送的IoArgs，默认全部发送数据
      */
-    private final IoArgs sendIoArgs = new IoArgs();
+    private final IoArgs sendIoArgs;
 
-    public BridgeSocketDispatcher(Receiver receiver) {
+    public BridgeSocketDispatcher(Receiver receiver, IoArgsAllocator allocator) {
         this.receiver = receiver;
+        this.receiveIoArgs = allocator.allocate(256, false);
+        this.sendIoArgs = allocator.allocate(256);
     }
 
     /**
@@ -98,10 +101,31 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
     }
 
     @Override
-    public void send(SendPacket packet) {
+    public void onDeliveryPending(long length) {
         // nothing
     }
 
+    @Override
+    public void onDeliveryCompleted(long length) {
+        // nothing
+    }
+
+    @Override
+    public boolean send(SendPacket packet) {
+        // nothing
+        return false;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    @Override
+    public long getOverflowDropCount() {
+        return 0;
+    }
+
     @Override
     public void sendHeartbeat() {
         // nothing
@@ -113,10 +137,31 @@ public class BridgeSocketDispatcher implements ReceiveDispatcher, SendDispatcher
     }
 
     @Override
-    public void close() {
+    public void sendReject(short identifier) {
         // nothing
     }
 
+    @Override
+    public void onPacketRejected(short identifier) {
+        // nothing
+    }
+
+    @Override
+    public void sendHandshake() {
+        // nothing
+    }
+
+    @Override
+    public void onPeerHandshake(byte version, int features, int maxFrameLength) {
+        // nothing
+    }
+
+    @Override
+    public void close() {
+        receiveIoArgs.release();
+        sendIoArgs.release();
+    }
+
     /**
      * 请求网络进行数据接收
      */
@@ -2,13 +2,16 @@ package clink.impl.single;
 
 
 import clink.core.IoProvider;
+import clink.core.ds.MpscLinkedQueue;
 
 import java.nio.channels.SocketChannel;
 
 /**
  * 可用以进行调度的任务封装，任务执行的回调、当前任务类型、任务对应的通道。
+ * <p>
+ * 读写的任务缓存在回调上长期复用，本身就是注册队列的节点。
  */
-class IoTask {
+class IoTask extends MpscLinkedQueue.Node {
 
     public final SocketChannel channel;
     public final IoProvider.HandleProviderCallback providerCallback;
@@ -15,8 +15,16 @@ public class SingleSelectorProvider implements IoProvider {
     private final SingleSelectorThread thread;
 
     public SingleSelectorProvider() throws IOException {
+        this(SingleSelectorThread.DEFAULT_SPIN_COUNT, SingleSelectorThread.DEFAULT_PARK_TIMEOUT);
+    }
+
+    /**
+     * @param spinCount   没有就绪的通道时连续空转的次数，之后阻塞等待
+     * @param parkTimeout 阻塞等待的超时时间，单位毫秒
+     */
+    public SingleSelectorProvider(int spinCount, long parkTimeout) throws IOException {
         Selector selector = Selector.open();
-        thread = new SingleSelectorThread(selector) {
+        thread = new SingleSelectorThread(selector, spinCount, parkTimeout) {
             @Override
             protected boolean processTask(IoTask task) {
                 task.providerCallback.run();
@@ -2,15 +2,16 @@ package clink.impl.single;
 
 
 import clink.core.IoProvider;
+import clink.core.ds.MpscLinkedQueue;
 import clink.utils.CloseUtils;
 
 import java.io.IOException;
 import java.nio.channels.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * PS：可窃取任务的线程
@@ -21,22 +22,43 @@ abstract class SingleSelectorThread extends Thread {
     // 允许的操作
     private static final int VALID_OPS = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
 
+    // 默认连续空转 1000 次之后阻塞等待，阻塞的超时时间为 100 毫秒
+    public static final int DEFAULT_SPIN_COUNT = 1000;
+    public static final long DEFAULT_PARK_TIMEOUT = 100;
+
     private final Selector selector;
 
     // 是否还处于运行中
     private volatile boolean isRunning = true;
 
-    // 已就绪任务队列
-    private final LinkedBlockingQueue<IoTask> readyTaskQueue = new LinkedBlockingQueue<>();
+    // 已就绪任务队列，只在当前线程中访问，数组实现，入队不分配节点
+    private final ArrayDeque<IoTask> readyTaskQueue = new ArrayDeque<>(256);
 
-    // 待注册的任务队列
-    private final LinkedBlockingQueue<IoTask> registerTaskQueue = new LinkedBlockingQueue<>();
+    // 待注册的任务队列，任务自身就是节点，入队不分配内存
+    private final MpscLinkedQueue<IoTask> registerTaskQueue = new MpscLinkedQueue<>();
 
     // 单次就绪的任务缓存，随后一次性加入到就绪队列中
     private final List<IoTask> onceReadyTaskCache = new ArrayList<>(200);
 
+    // 连续空转的次数上限，超过之后阻塞在 select 上，有数据时的延迟不变，空闲时不再占用 CPU
+    private final int spinCount;
+    // 阻塞等待的超时时间，单位毫秒
+    private final long parkTimeout;
+    // 是否阻塞在 select 上，只有阻塞时注册才需要唤醒 Selector
+    private volatile boolean isParked;
+
     SingleSelectorThread(Selector selector) {
+        this(selector, DEFAULT_SPIN_COUNT, DEFAULT_PARK_TIMEOUT);
+    }
+
+    /**
+     * @param spinCount   没有就绪的通道时连续空转的次数，之后阻塞等待
+     * @param parkTimeout 阻塞等待的超时时间，单位毫秒
+     */
+    SingleSelectorThread(Selector selector, int spinCount, long parkTimeout) {
         this.selector = selector;
+        this.spinCount = spinCount;
+        this.parkTimeout = parkTimeout;
     }
 
     /**
@@ -49,14 +71,33 @@ abstract class SingleSelectorThread extends Thread {
      */
     public boolean register(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
         if (channel.isOpen()) {
-            IoTask ioTask = new IoTask(channel, ops, callback);
-            registerTaskQueue.offer(ioTask);
+            // 复用回调上缓存的任务，已在队列中时不需要重复添加
+            IoTask ioTask = taskOf(channel, ops, callback);
+            if (registerTaskQueue.offer(ioTask)) {
+                wakeupIfParked();
+            }
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * 获取回调上缓存的任务，第一次注册时创建
+     */
+    private static IoTask taskOf(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
+        Object cached = callback.getProviderTask();
+        if (cached instanceof IoTask) {
+            IoTask task = (IoTask) cached;
+            if (task.channel == channel && task.ops == ops) {
+                return task;
+            }
+        }
+        IoTask task = new IoTask(channel, ops, callback);
+        callback.setProviderTask(task);
+        return task;
+    }
+
     /**
      * 取消注册，原理类似于注册操作在队列中添加一份取消注册的任务；并将副本变量清空
      *
@@ -70,6 +111,16 @@ abstract class SingleSelectorThread extends Thread {
             // 添加取消操作
             IoTask ioTask = new IoTask(channel, 0, null);
             registerTaskQueue.offer(ioTask);
+            wakeupIfParked();
+        }
+    }
+
+    /**
+     * 添加待处理的任务后调用，线程阻塞在 select 上时唤醒它，空转时会自己看到新的任务，不需要唤醒
+     */
+    void wakeupIfParked() {
+        if (isParked) {
+            selector.wakeup();
         }
     }
 
@@ -78,7 +129,7 @@ abstract class SingleSelectorThread extends Thread {
      *
      * @param registerTaskQueue 待注册的通道
      */
-    private void consumeRegisterTodoTasks(final LinkedBlockingQueue<IoTask> registerTaskQueue) {
+    private void consumeRegisterTodoTasks(final MpscLinkedQueue<IoTask> registerTaskQueue) {
         final Selector selector = this.selector;
 
         IoTask registerTask = registerTaskQueue.poll();
@@ -123,14 +174,16 @@ abstract class SingleSelectorThread extends Thread {
      * @param readyTaskQueue     总任务队列
      * @param onceReadyTaskCache 单次待执行的任务
      */
-    private void joinTaskQueue(final LinkedBlockingQueue<IoTask> readyTaskQueue, final List<IoTask> onceReadyTaskCache) {
-        readyTaskQueue.addAll(onceReadyTaskCache);
+    private void joinTaskQueue(final ArrayDeque<IoTask> readyTaskQueue, final List<IoTask> onceReadyTaskCache) {
+        for (IoTask task : onceReadyTaskCache) {
+            readyTaskQueue.offer(task);
+        }
     }
 
     /**
      * 消费待完成的任务
      */
-    private void consumeTodoTasks(final LinkedBlockingQueue<IoTask> readyTaskQueue, LinkedBlockingQueue<IoTask> registerTaskQueue) {
+    private void consumeTodoTasks(final ArrayDeque<IoTask> readyTaskQueue, MpscLinkedQueue<IoTask> registerTaskQueue) {
         // 循环把所有任务做完
         IoTask doTask = readyTaskQueue.poll();
         while (doTask != null) {
@@ -149,9 +202,10 @@ abstract class SingleSelectorThread extends Thread {
         super.run();
 
         final Selector selector = this.selector;
-        final LinkedBlockingQueue<IoTask> readyTaskQueue = this.readyTaskQueue;
-        final LinkedBlockingQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
+        final ArrayDeque<IoTask> readyTaskQueue = this.readyTaskQueue;
+        final MpscLinkedQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
         final List<IoTask> onceReadyTaskCache = this.onceReadyTaskCache;
+        int idleCount = 0;
 
         try {
             while (isRunning) {
@@ -160,9 +214,21 @@ abstract class SingleSelectorThread extends Thread {
 
                 // 检查一次
                 if ((selector.selectNow()) == 0) {
-                    Thread.yield();
-                    continue;
+                    // 先空转一段时间，负载高时新的事件很快就会到来，不需要付出阻塞与唤醒的开销
+                    if (idleCount < spinCount) {
+                        idleCount++;
+                        Thread.yield();
+                        continue;
+                    }
+                    // 先标记再检查，注册的线程要么看到标记去唤醒，要么任务在阻塞之前被看到
+                    isParked = true;
+                    int count = registerTaskQueue.isEmpty() ? selector.select(parkTimeout) : 0;
+                    isParked = false;
+                    if (count == 0) {
+                        continue;
+                    }
                 }
+                idleCount = 0;
 
                 // 处理已就绪的通道
                 Set<SelectionKey> selectionKeys = selector.selectedKeys();
@@ -0,0 +1,27 @@
+package clink.impl.stealing;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * 一个通道的负载以及它所在的线程，通道的读写都注册到该线程上，迁移时修改线程，下一次注册时生效。
+ */
+class ChannelLoad extends LoadMeter {
+
+    final SocketChannel channel;
+
+    private volatile StealingSelectorThread thread;
+
+    ChannelLoad(SocketChannel channel, StealingSelectorThread thread) {
+        this.channel = channel;
+        this.thread = thread;
+    }
+
+    StealingSelectorThread getThread() {
+        return thread;
+    }
+
+    void setThread(StealingSelectorThread thread) {
+        this.thread = thread;
+    }
+
+}
@@ -16,11 +16,19 @@ public class IoStealingSelectorProvider implements IoProvider {
     private final StealingService stealingService;
 
     public IoStealingSelectorProvider(int poolSize) throws IOException {
+        this(poolSize, StealingSelectorThread.DEFAULT_SPIN_COUNT, StealingSelectorThread.DEFAULT_PARK_TIMEOUT);
+    }
+
+    /**
+     * @param spinCount   没有就绪的通道时连续空转的次数，之后阻塞等待
+     * @param parkTimeout 阻塞等待的超时时间，单位毫秒
+     */
+    public IoStealingSelectorProvider(int poolSize, int spinCount, long parkTimeout) throws IOException {
         IoStealingThread[] threads = new IoStealingThread[poolSize];
 
         for (int i = 0; i < poolSize; i++) {
             Selector selector = Selector.open();
-            threads[i] = new IoStealingThread("IoProvider-Thread-" + (i + 1), selector);
+            threads[i] = new IoStealingThread("IoProvider-Thread-" + (i + 1), selector, spinCount, parkTimeout);
         }
 
         StealingService stealingService = new StealingService(threads, 10);
@@ -36,24 +44,32 @@ public class IoStealingSelectorProvider implements IoProvider {
 
     @Override
     public boolean registerInput(SocketChannel channel, HandleProviderCallback callback) {
-        StealingSelectorThread thread = stealingService.getNotBusyThread();
-        if (thread != null) {
-            return thread.register(channel, SelectionKey.OP_READ, callback);
-        }
-        return false;
+        return register(channel, SelectionKey.OP_READ, callback);
     }
 
     @Override
     public boolean registerOutput(SocketChannel channel, HandleProviderCallback callback) {
-        StealingSelectorThread thread = stealingService.getNotBusyThread();
-        if (thread != null) {
-            return thread.register(channel, SelectionKey.OP_WRITE, callback);
+        return register(channel, SelectionKey.OP_WRITE, callback);
+    }
+
+    /**
+     * 通道的读写都注册到其绑定的线程上，迁移后注册到新的线程
+     */
+    private boolean register(SocketChannel channel, int ops, HandleProviderCallback callback) {
+        if (!channel.isOpen()) {
+            return false;
+        }
+        ChannelLoad channelLoad = stealingService.bindChannel(channel);
+        if (channelLoad != null) {
+            return channelLoad.getThread().register(channel, ops, callback, channelLoad);
         }
         return false;
     }
 
     @Override
     public void unRegisterInput(SocketChannel channel) {
+        stealingService.unbindChannel(channel);
+        // 迁移过的通道在原来的线程上也有注册
         for (IoStealingThread thread : threads) {
             thread.unregister(channel);
         }
@@ -68,10 +84,17 @@ public class IoStealingSelectorProvider implements IoProvider {
         stealingService.shutdown();
     }
 
+    /**
+     * 负载不均衡时累计迁移的通道次数，用于统计
+     */
+    public long getMigrateCount() {
+        return stealingService.getMigrateCount();
+    }
+
     static class IoStealingThread extends StealingSelectorThread {
 
-        IoStealingThread(String name, Selector selector) {
-            super(selector);
+        IoStealingThread(String name, Selector selector, int spinCount, long parkTimeout) {
+            super(selector, spinCount, parkTimeout);
             setName(name);
         }
 
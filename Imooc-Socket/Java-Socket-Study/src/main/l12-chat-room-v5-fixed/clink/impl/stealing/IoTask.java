@@ -2,22 +2,32 @@ package clink.impl.stealing;
 
 
 import clink.core.IoProvider;
+import clink.core.ds.MpscLinkedQueue;
 
 import java.nio.channels.SocketChannel;
 
 /**
  * 可用以进行调度的任务封装，任务执行的回调、当前任务类型、任务对应的通道。
+ * <p>
+ * 读写的任务缓存在回调上长期复用，本身就是注册队列的节点。
  */
-class IoTask {
+class IoTask extends MpscLinkedQueue.Node {
 
     public final SocketChannel channel;
     public final IoProvider.HandleProviderCallback providerCallback;
     public final int ops;
+    // 通道的负载，执行任务后累计，可以为 null
+    public final ChannelLoad channelLoad;
 
     IoTask(SocketChannel channel, int ops, IoProvider.HandleProviderCallback providerCallback) {
+        this(channel, ops, providerCallback, null);
+    }
+
+    IoTask(SocketChannel channel, int ops, IoProvider.HandleProviderCallback providerCallback, ChannelLoad channelLoad) {
         this.channel = channel;
         this.providerCallback = providerCallback;
         this.ops = ops;
+        this.channelLoad = channelLoad;
     }
 
 }
@@ -0,0 +1,75 @@
+package clink.impl.stealing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载的度量，累计执行任务的耗时与读写的数据量，定期换算为指数衰减的平均值（EWMA），越早的样本权重越低。
+ * <p>
+ * 累计由执行任务的线程完成，换算只在 {@link StealingService} 的调度中进行。
+ */
+class LoadMeter {
+
+    // 一个线程满负荷时大约能读写的数据量，用于把数据量换算为负载
+    private static final double BYTES_PER_FULL_LOAD = 128 * 1024 * 1024;
+
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+
+    // 上一次换算时的累计值，只在调度中使用
+    private long lastBusyNanos;
+    private long lastTransferredBytes;
+
+    // 忙碌时间的占比，1 表示一直在执行任务
+    private volatile double busyRatio;
+    // 每秒读写的数据量
+    private volatile double bytesRate;
+
+    /**
+     * 记录一次任务的执行
+     *
+     * @param nanos 任务的耗时
+     * @param bytes 任务读写的数据量
+     */
+    void record(long nanos, int bytes) {
+        busyNanos.addAndGet(nanos);
+        if (bytes > 0) {
+            transferredBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * 用上一次换算以来的累计值更新平均值
+     *
+     * @param elapsedNanos 距离上一次换算的时间
+     * @param alpha        新样本的权重
+     */
+    void update(long elapsedNanos, double alpha) {
+        if (elapsedNanos <= 0) {
+            return;
+        }
+        long busy = busyNanos.get();
+        long bytes = transferredBytes.get();
+        double busySample = (double) (busy - lastBusyNanos) / elapsedNanos;
+        double bytesSample = (bytes - lastTransferredBytes) * 1e9 / elapsedNanos;
+        lastBusyNanos = busy;
+        lastTransferredBytes = bytes;
+        busyRatio = alpha * busySample + (1 - alpha) * busyRatio;
+        bytesRate = alpha * bytesSample + (1 - alpha) * bytesRate;
+    }
+
+    /**
+     * 综合忙碌时间与数据量的负载，1 大约相当于一个线程满负荷
+     */
+    double getLoad() {
+        return busyRatio + bytesRate / BYTES_PER_FULL_LOAD;
+    }
+
+    double getBusyRatio() {
+        return busyRatio;
+    }
+
+    double getBytesRate() {
+        return bytesRate;
+    }
+
+}
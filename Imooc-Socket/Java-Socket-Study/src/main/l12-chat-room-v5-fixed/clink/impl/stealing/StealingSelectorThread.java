@@ -2,6 +2,8 @@ package clink.impl.stealing;
 
 
 import clink.core.IoProvider;
+import clink.core.ds.MpscLinkedQueue;
+import clink.core.ds.WorkStealingDeque;
 import clink.utils.CloseUtils;
 
 import java.io.IOException;
@@ -10,8 +12,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * PS：可窃取任务的线程
@@ -22,29 +24,56 @@ public abstract class StealingSelectorThread extends Thread {
     // 允许的操作
     private static final int VALID_OPS = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
 
+    // 默认连续空转 1000 次之后阻塞等待，阻塞的超时时间为 100 毫秒
+    public static final int DEFAULT_SPIN_COUNT = 1000;
+    public static final long DEFAULT_PARK_TIMEOUT = 100;
+
     private final Selector selector;
 
     // 是否还处于运行中
     private volatile boolean isRunning = true;
 
-    // 已就绪任务队列
-    private final LinkedBlockingQueue<IoTask> readyTaskQueue = new LinkedBlockingQueue<>();
+    // 已就绪任务队列，当前线程在底部入队出队，其他线程从顶部窃取，都不需要加锁
+    private final WorkStealingDeque<IoTask> readyTaskQueue = new WorkStealingDeque<>(256);
+
+    // 其他线程提交的任务，只能由当前线程移入就绪队列
+    private final ConcurrentLinkedQueue<IoTask> submittedTaskQueue = new ConcurrentLinkedQueue<>();
 
-    // 待注册的任务队列
-    private final LinkedBlockingQueue<IoTask> registerTaskQueue = new LinkedBlockingQueue<>();
+    // 待注册的任务队列，任务自身就是节点，入队不分配内存
+    private final MpscLinkedQueue<IoTask> registerTaskQueue = new MpscLinkedQueue<>();
 
     // 单次就绪的任务缓存，随后一次性加入到就绪队列中
     private final List<IoTask> onceReadyTaskCache = new ArrayList<>(200);
 
-    // 任务饱和度度量
-    private final AtomicLong saturatingCapacity = new AtomicLong();
+    // 连续空转的次数上限，超过之后阻塞在 select 上，有数据时的延迟不变，空闲时不再占用 CPU
+    private final int spinCount;
+    // 阻塞等待的超时时间，单位毫秒
+    private final long parkTimeout;
+    // 是否阻塞在 select 上，只有阻塞时注册才需要唤醒 Selector
+    private volatile boolean isParked;
+
+    // 线程的负载，执行任务的耗时与读写的数据量
+    private final LoadMeter loadMeter = new LoadMeter();
+
+    // 绑定到当前线程的通道数量
+    private final AtomicInteger channelCount = new AtomicInteger();
 
     // 用于多线程协同的Service
     private volatile StealingService stealingService;
 
     public StealingSelectorThread(Selector selector) {
+        this(selector, DEFAULT_SPIN_COUNT, DEFAULT_PARK_TIMEOUT);
+    }
+
+    /**
+     * @param spinCount   没有就绪的通道时连续空转的次数，之后阻塞等待
+     * @param parkTimeout 阻塞等待的超时时间，单位毫秒
+     */
+    public StealingSelectorThread(Selector selector, int spinCount, long parkTimeout) {
         super("StealingSelectorThread");
         this.selector = selector;
+        this.spinCount = spinCount;
+        this.parkTimeout = parkTimeout;
     }
 
     /**
@@ -61,24 +90,31 @@ public abstract class StealingSelectorThread extends Thread {
      *
      * @return 任务队列
      */
-    LinkedBlockingQueue<IoTask> getReadyTaskQueue() {
+    WorkStealingDeque<IoTask> getReadyTaskQueue() {
         return readyTaskQueue;
     }
 
     /**
-     * 获取饱和程度
-     * 暂时的饱和度量是使用任务执行的次数来定
+     * 获取负载，由 {@link StealingService} 定期更新
      *
      * @return -1 已失效
      */
-    long getSaturatingCapacity() {
+    double getLoad() {
         if (selector.isOpen()) {
-            return saturatingCapacity.get();
+            return loadMeter.getLoad();
         } else {
             return -1;
         }
     }
 
+    LoadMeter getLoadMeter() {
+        return loadMeter;
+    }
+
+    AtomicInteger getChannelCount() {
+        return channelCount;
+    }
+
     /**
      * 将通道注册到当前的Selector中
      *
@@ -88,16 +124,43 @@ public abstract class StealingSelectorThread extends Thread {
      * @return 是否注册成功
      */
     public boolean register(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback) {
+        return register(channel, ops, callback, null);
+    }
+
+    /**
+     * 将通道注册到当前的Selector中，执行时累计通道的负载
+     *
+     * @param channelLoad 通道的负载，可以为 null
+     */
+    boolean register(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback, ChannelLoad channelLoad) {
         if (channel.isOpen()) {
-            //TODO：内存抖动
-            IoTask ioTask = new IoTask(channel, ops, callback);
-            registerTaskQueue.offer(ioTask);
+            // 复用回调上缓存的任务，已在队列中时不需要重复添加
+            IoTask ioTask = taskOf(channel, ops, callback, channelLoad);
+            if (registerTaskQueue.offer(ioTask)) {
+                wakeupIfParked();
+            }
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * 获取回调上缓存的任务，第一次注册或者通道重新绑定时创建
+     */
+    private static IoTask taskOf(SocketChannel channel, int ops, IoProvider.HandleProviderCallback callback, ChannelLoad channelLoad) {
+        Object cached = callback.getProviderTask();
+        if (cached instanceof IoTask) {
+            IoTask task = (IoTask) cached;
+            if (task.channel == channel && task.ops == ops && task.channelLoad == channelLoad) {
+                return task;
+            }
+        }
+        IoTask task = new IoTask(channel, ops, callback, channelLoad);
+        callback.setProviderTask(task);
+        return task;
+    }
+
     /**
      * 取消注册，原理类似于注册操作在队列中添加一份取消注册的任务；并将副本变量清空
      *
@@ -111,6 +174,24 @@ public abstract class StealingSelectorThread extends Thread {
             // 添加取消操作
             IoTask ioTask = new IoTask(channel, 0, null);
             registerTaskQueue.offer(ioTask);
+            wakeupIfParked();
+        }
+    }
+
+    /**
+     * 提交一个任务，由当前线程或者窃取的线程执行
+     */
+    void execute(IoTask task) {
+        submittedTaskQueue.offer(task);
+        wakeupIfParked();
+    }
+
+    /**
+     * 添加待处理的任务后调用，线程阻塞在 select 上时唤醒它，空转时会自己看到新的任务，不需要唤醒
+     */
+    void wakeupIfParked() {
+        if (isParked) {
+            selector.wakeup();
         }
     }
 
@@ -119,7 +200,7 @@ public abstract class StealingSelectorThread extends Thread {
      *
      * @param registerTaskQueue 待注册的通道
      */
-    private void consumeRegisterTodoTasks(final LinkedBlockingQueue<IoTask> registerTaskQueue) {
+    private void consumeRegisterTodoTasks(final MpscLinkedQueue<IoTask> registerTaskQueue) {
         final Selector selector = this.selector;
 
         IoTask registerTask = registerTaskQueue.poll();
@@ -164,29 +245,31 @@ public abstract class StealingSelectorThread extends Thread {
      * @param readyTaskQueue     总任务队列
      * @param onceReadyTaskCache 单次待执行的任务
      */
-    private void joinTaskQueue(final LinkedBlockingQueue<IoTask> readyTaskQueue, final List<IoTask> onceReadyTaskCache) {
-        readyTaskQueue.addAll(onceReadyTaskCache);
+    private void joinTaskQueue(final WorkStealingDeque<IoTask> readyTaskQueue, final List<IoTask> onceReadyTaskCache) {
+        for (IoTask task : onceReadyTaskCache) {
+            readyTaskQueue.push(task);
+        }
         // TODO 通知 StealingService 任务数量改变了，可以做一定的排序操作
     }
 
     /**
      * 消费待完成的任务
      */
-    private void consumeTodoTasks(final LinkedBlockingQueue<IoTask> readyTaskQueue, LinkedBlockingQueue<IoTask> registerTaskQueue) {
-        final AtomicLong saturatingCapacity = this.saturatingCapacity;
+    private void consumeTodoTasks(final WorkStealingDeque<IoTask> readyTaskQueue, MpscLinkedQueue<IoTask> registerTaskQueue) {
+        // 其他线程提交的任务移入就绪队列，同样可以被窃取
+        IoTask doTask = submittedTaskQueue.poll();
+        while (doTask != null) {
+            readyTaskQueue.push(doTask);
+            doTask = submittedTaskQueue.poll();
+        }
 
         // 循环把所有任务做完
-        IoTask doTask = readyTaskQueue.poll();
+        doTask = readyTaskQueue.pop();
         while (doTask != null) {
-            // 增加饱和度
-            saturatingCapacity.incrementAndGet();
             // 做任务
-            if (processTask(doTask)) {
-                // 做完工作后添加待注册的列表
-                registerTaskQueue.offer(doTask);
-            }
+            runTask(doTask, registerTaskQueue);
             // 下个任务
-            doTask = readyTaskQueue.poll();
+            doTask = readyTaskQueue.pop();
         }
 
         // 窃取其他的任务
@@ -194,34 +277,71 @@ public abstract class StealingSelectorThread extends Thread {
         if (stealingService != null) {
             doTask = stealingService.steal(readyTaskQueue);
             while (doTask != null) {
-                saturatingCapacity.incrementAndGet();
-                if (processTask(doTask)) {
-                    registerTaskQueue.offer(doTask);
-                }
+                runTask(doTask, registerTaskQueue);
                 doTask = stealingService.steal(readyTaskQueue);
             }
         }
     }
 
+    /**
+     * 执行任务，并把耗时与读写的数据量累计到当前线程以及任务的通道上，窃取的任务算作当前线程的负载
+     */
+    private void runTask(IoTask task, MpscLinkedQueue<IoTask> registerTaskQueue) {
+        long start = System.nanoTime();
+        boolean isAgain = processTask(task);
+        long cost = System.nanoTime() - start;
+
+        int bytes = task.providerCallback == null ? 0 : task.providerCallback.getTransferredBytes();
+        loadMeter.record(cost, bytes);
+        if (task.channelLoad != null) {
+            task.channelLoad.record(cost, bytes);
+        }
+
+        if (isAgain) {
+            // 做完工作后添加待注册的列表
+            registerTaskQueue.offer(task);
+        }
+    }
+
     @Override
     public final void run() {
         super.run();
 
         final Selector selector = this.selector;
-        final LinkedBlockingQueue<IoTask> readyTaskQueue = this.readyTaskQueue;
-        final LinkedBlockingQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
+        final WorkStealingDeque<IoTask> readyTaskQueue = this.readyTaskQueue;
+        final ConcurrentLinkedQueue<IoTask> submittedTaskQueue = this.submittedTaskQueue;
+        final MpscLinkedQueue<IoTask> registerTaskQueue = this.registerTaskQueue;
         final List<IoTask> onceReadyTaskCache = this.onceReadyTaskCache;
+        int idleCount = 0;
 
         try {
             while (isRunning) {
+                // 定期更新负载，必要时迁移通道
+                final StealingService stealingService = this.stealingService;
+                if (stealingService != null) {
+                    stealingService.tryRebalance();
+                }
+
                 // 加入待注册的通道
                 consumeRegisterTodoTasks(registerTaskQueue);
 
-                // 检查一次
-                if ((selector.selectNow()) == 0) {
-                    Thread.yield();
-                    continue;
+                // 检查一次，提交的任务不需要等待通道就绪
+                if ((selector.selectNow()) == 0 && submittedTaskQueue.isEmpty()) {
+                    // 先空转一段时间，负载高时新的事件很快就会到来，不需要付出阻塞与唤醒的开销
+                    if (idleCount < spinCount) {
+                        idleCount++;
+                        Thread.yield();
+                        continue;
+                    }
+                    // 先标记再检查，注册的线程要么看到标记去唤醒，要么任务在阻塞之前被看到
+                    isParked = true;
+                    int count = registerTaskQueue.isEmpty() && submittedTaskQueue.isEmpty() ? selector.select(parkTimeout) : 0;
+                    isParked = false;
+                    if (count == 0 && submittedTaskQueue.isEmpty()) {
+                        continue;
+                    }
                 }
+                idleCount = 0;
 
                 // 处理已就绪的通道
                 Set<SelectionKey> selectionKeys = selector.selectedKeys();
@@ -277,7 +397,10 @@ public abstract class StealingSelectorThread extends Thread {
         } catch (IOException e) {
             CloseUtils.close(selector);
         } finally {
-            readyTaskQueue.clear();
+            while (readyTaskQueue.pop() != null) {
+                // 清空
+            }
+            submittedTaskQueue.clear();
             registerTaskQueue.clear();
             onceReadyTaskCache.clear();
         }
@@ -1,20 +1,51 @@
 package clink.impl.stealing;
 
+import java.nio.channels.SocketChannel;
 import java.util.Arrays;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.IntFunction;
 
+import clink.core.ds.WorkStealingDeque;
+
 /**
  * 窃取调度服务
+ * <p>
+ * 每个通道绑定到一个线程，读写都注册到该线程上。线程与通道的负载定期换算为指数衰减的平均值，
+ * 新的通道绑定到负载最低的线程，线程之间的负载相差超过阈值时，把最忙的线程上的一个通道迁移到最闲的线程。
  */
 @SuppressWarnings("unused")
 public class StealingService {
 
+    /**
+     * 默认的迁移阈值，最忙与最闲的线程的负载相差超过 0.25 个线程时迁移
+     */
+    public static final double DEFAULT_REBALANCE_THRESHOLD = 0.25;
+
+    // 换算负载以及检查迁移的间隔
+    private static final long REBALANCE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+    // 每次换算时新样本的权重，约 2 秒之前的样本权重低于 10%
+    private static final double LOAD_ALPHA = 0.5;
+
+    // 迁移之后等待平均值反映迁移的结果，再检查下一次迁移，避免来回迁移
+    private static final int MIGRATE_COOLDOWN_TIMES = 4;
+
+    // 负载相差在该值以内的线程视为一样忙，优先选择通道少的
+    private static final double PLACEMENT_TOLERANCE = 0.05;
+
     /**
      * 当任务队列数量低于安全值时，不可窃取
      */
     private final int minSafetyThreshold;
 
+    /**
+     * 线程之间的负载相差超过该值时迁移通道，0 表示不迁移
+     */
+    private final double rebalanceThreshold;
+
     /**
      * 线程集合
      */
@@ -23,17 +54,35 @@ public class StealingService {
     /**
      * 对应的任务队列
      */
-    private final LinkedBlockingQueue<IoTask>[] queues;
+    private final WorkStealingDeque<IoTask>[] queues;
+
+    /**
+     * 通道与其负载、所在线程
+     */
+    private final ConcurrentHashMap<SocketChannel, ChannelLoad> channels = new ConcurrentHashMap<>();
+
+    // 同时只有一个线程执行调度
+    private final AtomicBoolean isRebalancing = new AtomicBoolean(false);
+    private volatile long nextRebalanceTime = System.nanoTime() + REBALANCE_INTERVAL;
+    private long lastRebalanceTime = System.nanoTime();
+    private int migrateCooldown;
+    // 累计迁移的次数，用于统计
+    private final AtomicLong migrateCount = new AtomicLong();
 
     // 结束标志
     private volatile boolean isTerminated = false;
 
     public StealingService(StealingSelectorThread[] threads, int minSafetyThreshold) {
+        this(threads, minSafetyThreshold, DEFAULT_REBALANCE_THRESHOLD);
+    }
+
+    public StealingService(StealingSelectorThread[] threads, int minSafetyThreshold, double rebalanceThreshold) {
         this.threads = threads;
         this.queues = Arrays.stream(threads)
                 .map(StealingSelectorThread::getReadyTaskQueue)
-                .toArray((IntFunction<LinkedBlockingQueue<IoTask>[]>) LinkedBlockingQueue[]::new);
+                .toArray((IntFunction<WorkStealingDeque<IoTask>[]>) WorkStealingDeque[]::new);
         this.minSafetyThreshold = minSafetyThreshold;
+        this.rebalanceThreshold = rebalanceThreshold;
     }
 
     /**
@@ -42,19 +91,19 @@ public class StealingService {
      * @param excludedQueue 待排除的队列
      * @return 窃取成功返回实例，失败返回NULL
      */
-    IoTask steal(final LinkedBlockingQueue<IoTask> excludedQueue) {
+    IoTask steal(final WorkStealingDeque<IoTask> excludedQueue) {
         final int minSafetyThreshold = this.minSafetyThreshold;
-        final LinkedBlockingQueue<IoTask>[] queues = this.queues;
-        for (LinkedBlockingQueue<IoTask> queue : queues) {
+        final WorkStealingDeque<IoTask>[] queues = this.queues;
+        for (WorkStealingDeque<IoTask> queue : queues) {
             if (queue == excludedQueue) {
                 continue;
             }
 
             int size = queue.size();
             if (size > minSafetyThreshold) {
-                IoTask poll = queue.poll();
-                if (poll != null) {
-                    return poll;
+                IoTask task = queue.steal();
+                if (task != null) {
+                    return task;
                 }
             }
         }
@@ -62,23 +111,163 @@ public class StealingService {
     }
 
     /**
-     * 获取一个不繁忙的线程
+     * 获取一个不繁忙的线程，负载差不多时选择通道少的
      *
      * @return StealingSelectorThread
      */
     public StealingSelectorThread getNotBusyThread() {
+        double minLoad = Double.MAX_VALUE;
+        for (StealingSelectorThread thread : threads) {
+            double load = thread.getLoad();
+            if (load >= 0 && load < minLoad) {
+                minLoad = load;
+            }
+        }
+
         StealingSelectorThread targetThread = null;
-        long targetKeyCount = Long.MAX_VALUE;
+        int targetChannelCount = Integer.MAX_VALUE;
         for (StealingSelectorThread thread : threads) {
-            long registerKeyCount = thread.getSaturatingCapacity();
-            if (registerKeyCount != -1 && registerKeyCount < targetKeyCount) {
-                targetKeyCount = registerKeyCount;
+            double load = thread.getLoad();
+            if (load < 0 || load > minLoad + PLACEMENT_TOLERANCE) {
+                continue;
+            }
+            int channelCount = thread.getChannelCount().get();
+            if (channelCount < targetChannelCount) {
+                targetChannelCount = channelCount;
                 targetThread = thread;
             }
         }
         return targetThread;
     }
 
+    /**
+     * 获取通道绑定的线程，第一次注册时绑定到不繁忙的线程
+     *
+     * @return null 表示没有可用的线程
+     */
+    ChannelLoad bindChannel(SocketChannel channel) {
+        ChannelLoad channelLoad = channels.get(channel);
+        if (channelLoad != null) {
+            return channelLoad;
+        }
+        StealingSelectorThread thread = getNotBusyThread();
+        if (thread == null) {
+            return null;
+        }
+        ChannelLoad newLoad = new ChannelLoad(channel, thread);
+        channelLoad = channels.putIfAbsent(channel, newLoad);
+        if (channelLoad != null) {
+            return channelLoad;
+        }
+        thread.getChannelCount().incrementAndGet();
+        return newLoad;
+    }
+
+    /**
+     * 通道关闭时解除绑定
+     */
+    void unbindChannel(SocketChannel channel) {
+        ChannelLoad channelLoad = channels.remove(channel);
+        if (channelLoad != null) {
+            synchronized (channelLoad) {
+                channelLoad.getThread().getChannelCount().decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 由各个线程在循环中调用，到达间隔时由其中一个线程执行调度
+     */
+    void tryRebalance() {
+        long now = System.nanoTime();
+        if (now - nextRebalanceTime < 0 || !isRebalancing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            nextRebalanceTime = now + REBALANCE_INTERVAL;
+            rebalance(now - lastRebalanceTime);
+            lastRebalanceTime = now;
+        } finally {
+            isRebalancing.set(false);
+        }
+    }
+
+    /**
+     * 更新线程与通道的负载，负载相差过大时迁移一个通道
+     *
+     * @param elapsedNanos 距离上一次调度的时间
+     */
+    private void rebalance(long elapsedNanos) {
+        StealingSelectorThread busiest = null;
+        StealingSelectorThread idlest = null;
+        for (StealingSelectorThread thread : threads) {
+            thread.getLoadMeter().update(elapsedNanos, LOAD_ALPHA);
+            double load = thread.getLoad();
+            if (load < 0) {
+                continue;
+            }
+            if (busiest == null || load > busiest.getLoad()) {
+                busiest = thread;
+            }
+            if (idlest == null || load < idlest.getLoad()) {
+                idlest = thread;
+            }
+        }
+
+        double gap = busiest == null ? 0 : busiest.getLoad() - idlest.getLoad();
+        if (migrateCooldown > 0) {
+            migrateCooldown--;
+        }
+        boolean isNeedMigrate = migrateCooldown == 0 && rebalanceThreshold > 0 && gap > rebalanceThreshold
+                && busiest.getChannelCount().get() > 1;
+
+        // 迁移后两个线程的负载越接近越好，负载超过差值的通道迁移后反而更不均衡
+        ChannelLoad candidate = null;
+        double candidateDistance = gap;
+        for (ChannelLoad channelLoad : channels.values()) {
+            if (!channelLoad.channel.isOpen()) {
+                // 注册与关闭并发时可能没有解除绑定
+                unbindChannel(channelLoad.channel);
+                continue;
+            }
+            channelLoad.update(elapsedNanos, LOAD_ALPHA);
+            if (isNeedMigrate && channelLoad.getThread() == busiest) {
+                double distance = Math.abs(gap - 2 * channelLoad.getLoad());
+                if (distance < candidateDistance) {
+                    candidateDistance = distance;
+                    candidate = channelLoad;
+                }
+            }
+        }
+
+        if (candidate != null) {
+            migrate(candidate, busiest, idlest);
+            migrateCooldown = MIGRATE_COOLDOWN_TIMES;
+        }
+    }
+
+    /**
+     * 迁移通道，正在等待就绪的注册仍然在原来的线程上完成，之后的注册都到新的线程上
+     */
+    private void migrate(ChannelLoad channelLoad, StealingSelectorThread from, StealingSelectorThread to) {
+        synchronized (channelLoad) {
+            if (channels.get(channelLoad.channel) != channelLoad || channelLoad.getThread() != from) {
+                return;
+            }
+            channelLoad.setThread(to);
+            from.getChannelCount().decrementAndGet();
+            to.getChannelCount().incrementAndGet();
+        }
+        migrateCount.incrementAndGet();
+    }
+
+    /**
+     * 累计迁移的通道次数
+     */
+    public long getMigrateCount() {
+        return migrateCount.get();
+    }
+
     /**
      * 结束操作
      */
@@ -90,6 +279,7 @@ public class StealingService {
         for (StealingSelectorThread thread : threads) {
             thread.exit();
         }
+        channels.clear();
     }
 
     /**
@@ -102,12 +292,15 @@ public class StealingService {
     }
 
     /**
-     * 执行一个任务
+     * 执行一个任务，提交到不繁忙的线程
      *
      * @param task 任务
      */
     public void execute(IoTask task) {
-
+        StealingSelectorThread thread = getNotBusyThread();
+        if (thread != null) {
+            thread.execute(task);
+        }
     }
 
 }
@@ -0,0 +1,108 @@
+package clink.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 线程本地的对象池，每个线程最多缓存 maxCapacityPerThread 个对象，超出的对象交给 GC 回收。
+ * <p>
+ * 对象总是回到创建它的线程的池中：在该线程回收时直接放入本地池，不需要同步；
+ * 在其他线程回收时放入该池的归还队列，由所属线程下一次 {@link #get()} 本地池为空时取回。
+ * 这样在一个线程获取、在 IO 线程回收的对象也能被复用。
+ * <p>
+ * 回收后的对象不能再被使用，由调用者保证。
+ *
+ * @param <T> 对象类型
+ */
+public abstract class Recycler<T> {
+
+    private final int maxCapacityPerThread;
+
+    private final ThreadLocal<Pool<T>> mPool = ThreadLocal.withInitial(() -> new Pool<>(this));
+
+    protected Recycler(int maxCapacityPerThread) {
+        this.maxCapacityPerThread = maxCapacityPerThread;
+    }
+
+    /**
+     * 从当前线程的池中获取一个对象，池为空时创建新的对象
+     */
+    public final T get() {
+        Pool<T> pool = mPool.get();
+        T object = pool.poll();
+        return object == null ? newObject(new Handle<>(pool)) : object;
+    }
+
+    /**
+     * 当前线程池中的对象数量，包括其他线程归还但还没有取回的对象
+     */
+    public final int size() {
+        Pool<T> pool = mPool.get();
+        return pool.local.size() + pool.returned.size();
+    }
+
+    /**
+     * 创建新的对象，对象需要保存 handle，回收时调用 {@link Handle#recycle(Object)}
+     */
+    protected abstract T newObject(Handle<T> handle);
+
+    /**
+     * 对象所属的池，每个对象创建时绑定，回收时回到该池
+     */
+    public static final class Handle<T> {
+
+        private final Pool<T> pool;
+
+        private Handle(Pool<T> pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * 回收对象到所属线程的池中
+         *
+         * @return 池已满时返回 false，对象被丢弃
+         */
+        public boolean recycle(T object) {
+            return pool.push(object);
+        }
+
+    }
+
+    private static final class Pool<T> {
+
+        private final Thread owner = Thread.currentThread();
+        private final int maxCapacity;
+        // 只由所属线程访问
+        private final ArrayDeque<T> local = new ArrayDeque<>();
+        // 其他线程归还的对象，数组实现，入队不分配节点
+        private final ArrayBlockingQueue<T> returned;
+
+        Pool(Recycler<T> recycler) {
+            this.maxCapacity = recycler.maxCapacityPerThread;
+            this.returned = new ArrayBlockingQueue<>(Math.max(1, maxCapacity));
+        }
+
+        T poll() {
+            T object = local.pollLast();
+            if (object == null && !returned.isEmpty()) {
+                // 一次取回其他线程归还的对象，之后的获取不需要同步
+                returned.drainTo(local, maxCapacity);
+                object = local.pollLast();
+            }
+            return object;
+        }
+
+        boolean push(T object) {
+            if (Thread.currentThread() == owner) {
+                if (local.size() >= maxCapacity) {
+                    return false;
+                }
+                local.offerLast(object);
+                return true;
+            }
+            return returned.offer(object);
+        }
+
+    }
+
+}
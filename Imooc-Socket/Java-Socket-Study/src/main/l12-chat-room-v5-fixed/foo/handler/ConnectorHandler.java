@@ -8,7 +8,6 @@ import java.nio.channels.SocketChannel;
 
 import clink.box.StringReceivePacket;
 import clink.core.Connector;
-import clink.core.IoContext;
 import clink.core.Packet;
 import clink.core.ReceivePacket;
 import clink.utils.CloseUtils;
@@ -44,6 +43,11 @@ public class ConnectorHandler extends Connector {
      */
     private final ConnectorStringPacketChain mStringPacketChain = new PrintConnectorStringPacketChain();
 
+    /**
+     * 责任链模式：用于处理可写状态变化的链【头链】
+     */
+    private final ConnectorWritabilityChain mWritabilityChain = new DefaultPrintConnectorWritabilityChain();
+
     private final String clientInfo;
 
     private final File cachePath;
@@ -60,6 +64,11 @@ public class ConnectorHandler extends Connector {
         mCloseChain.handle(this, this);
     }
 
+    @Override
+    protected void onWritabilityChanged(boolean isWritable) {
+        mWritabilityChain.handle(this, isWritable);
+    }
+
     @Override
     protected File createNewReceiveFile(long length, byte[] headerInfo) {
         return Foo.createRandomTemp(cachePath);
@@ -94,9 +103,7 @@ public class ConnectorHandler extends Connector {
     }
 
     private void deliveryStringPacket(StringReceivePacket packet) {
-        IoContext.get()
-                .scheduler()
-                .delivery(() -> mStringPacketChain.handle(this, packet));
+        delivery(packet, () -> mStringPacketChain.handle(this, packet));
     }
 
     /**
@@ -117,4 +124,13 @@ public class ConnectorHandler extends Connector {
         return mCloseChain;
     }
 
+    /**
+     * 获取当前链接的可写状态变化处理责任链 链头
+     *
+     * @return ConnectorWritabilityChain
+     */
+    public ConnectorWritabilityChain getWritabilityChain() {
+        return mWritabilityChain;
+    }
+
 }
@@ -0,0 +1,8 @@
+package foo.handler;
+
+/**
+ * 连接可写状态变化的链式结构，处理的数据为当前是否可写
+ */
+public abstract class ConnectorWritabilityChain extends ConnectorHandlerChain<Boolean> {
+
+}
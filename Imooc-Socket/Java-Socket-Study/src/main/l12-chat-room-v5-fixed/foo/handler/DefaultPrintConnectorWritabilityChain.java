@@ -0,0 +1,14 @@
+package foo.handler;
+
+/**
+ * 默认可写状态变化打印链
+ */
+class DefaultPrintConnectorWritabilityChain extends ConnectorWritabilityChain {
+
+    @Override
+    protected boolean consume(ConnectorHandler handler, Boolean isWritable) {
+        System.out.println(handler.getClientInfo() + ":" + (isWritable ? "Writable" : "Unwritable") + ", Key:" + handler.getKey().toString());
+        return false;
+    }
+
+}
@@ -5,7 +5,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
+import clink.core.ConnectorConfig;
 import clink.core.IoContext;
+import clink.core.Packet;
+import clink.core.SendOverflowPolicy;
+import clink.core.alloc.PooledIoArgsAllocator;
 import clink.impl.single.SingleSelectorProvider;
 import clink.impl.stealing.IoStealingSelectorProvider;
 import clink.impl.SchedulerImpl;
@@ -31,6 +35,20 @@ class Server {
                 //TODO：性能优化3（多线程任务窃取）
                 .ioProvider(new IoStealingSelectorProvider(3))
                 .scheduler(new SchedulerImpl(1))
+                .ioArgsAllocator(new PooledIoArgsAllocator())
+                .connectorConfig(ConnectorConfig.newBuilder()
+                        .readAhead(true)
+                        .sendBatch(true, 64 * 1024)
+                        .maxConcurrentSendPackets(8)
+                        .compactFrame(1024)
+                        .compress(512, false)
+                        .handshake(true, false)
+                        // 消费慢的客户端最多占用 1MB 的发送队列，超出时丢弃最早的消息
+                        .sendQueue(256 * 1024, 1024 * 1024, SendOverflowPolicy.DROP_OLDEST)
+                        // 消息处理不过来时暂停读取，让刷屏的客户端慢下来
+                        .receiveBacklog(256, 1024 * 1024)
+                        .largeFrame(4 * 1024 * 1024, Packet.TYPE_STREAM_FILE)
+                        .build())
                 .start();
 
         //文件缓存路径
@@ -192,10 +192,19 @@ class TCPServer {
      * 获取当前的状态信息
      */
     Object[] getStatusString() {
+        int count;
+        long bufferSize = 0;
+        synchronized (connectorHandlerList) {
+            count = connectorHandlerList.size();
+            for (ConnectorHandler handler : connectorHandlerList) {
+                bufferSize += handler.getReceiveBufferSize();
+            }
+        }
         return new String[]{
-                "客户端数量：" + connectorHandlerList.size(),
+                "客户端数量：" + count,
                 "发送数量：" + statistics.sendSize,
-                "接收数量：" + statistics.receiveSize
+                "接收数量：" + statistics.receiveSize,
+                "平均接收缓冲区：" + (count == 0 ? 0 : bufferSize / count)
         };
     }
 
@@ -0,0 +1,200 @@
+package tester;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clink.core.ds.WorkStealingDeque;
+
+/**
+ * 就绪任务队列的对比测试：LinkedBlockingQueue 与 WorkStealingDeque
+ * <p>
+ * 1. 拥有者吞吐：拥有者线程每次放入一批任务再全部取出，对应选择器线程的 joinTaskQueue 与 consumeTodoTasks。
+ * 2. 窃取延迟：拥有者持续放入与取出，其他线程不停窃取，统计单次窃取的耗时。
+ * <p>
+ * 每项先预热再测量，运行时加上 -server，结果只用于两种队列之间的对比。
+ */
+public class DequeBenchmark {
+
+    private static final int BATCH_SIZE = 64;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+    private static final int THIEF_COUNT = 2;
+
+    private static final Object TASK = new Object();
+
+    /**
+     * 两种队列的统一操作
+     */
+    private interface Queue {
+        void push(Object item);
+
+        Object pop();
+
+        Object steal();
+
+        int size();
+    }
+
+    private static Queue blockingQueue() {
+        final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        return new Queue() {
+            @Override
+            public void push(Object item) {
+                queue.offer(item);
+            }
+
+            @Override
+            public Object pop() {
+                return queue.poll();
+            }
+
+            @Override
+            public Object steal() {
+                return queue.poll();
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+        };
+    }
+
+    private static Queue stealingDeque() {
+        final WorkStealingDeque<Object> deque = new WorkStealingDeque<>(256);
+        return new Queue() {
+            @Override
+            public void push(Object item) {
+                deque.push(item);
+            }
+
+            @Override
+            public Object pop() {
+                return deque.pop();
+            }
+
+            @Override
+            public Object steal() {
+                return deque.steal();
+            }
+
+            @Override
+            public int size() {
+                return deque.size();
+            }
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        report("LinkedBlockingQueue", ownerThroughput(blockingQueue()), stealLatency(blockingQueue()));
+        report("WorkStealingDeque", ownerThroughput(stealingDeque()), stealLatency(stealingDeque()));
+    }
+
+    private static void report(String name, double opsPerSecond, double[] steal) {
+        System.out.println(String.format("%-20s owner: %.1f Mops/s, steal: %.1f ns/op (%.1f%% hit), owner under steal: %.1f Mops/s",
+                name, opsPerSecond / 1000000, steal[0], steal[1] * 100, steal[2] / 1000000));
+    }
+
+    /**
+     * 单线程拥有者吞吐，每秒完成的入队+出队次数
+     */
+    private static double ownerThroughput(Queue queue) {
+        double best = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURE_ROUNDS; round++) {
+            long ops = 0;
+            long start = System.nanoTime();
+            long end = start + ROUND_NANOS;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < 1000; i++) {
+                    for (int j = 0; j < BATCH_SIZE; j++) {
+                        queue.push(TASK);
+                    }
+                    while (queue.pop() != null) {
+                        ops++;
+                    }
+                }
+            }
+            double result = ops * 1e9 / (System.nanoTime() - start);
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.max(best, result);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 有窃取者时的表现
+     *
+     * @return [单次窃取的平均耗时, 窃取成功的比例, 拥有者的吞吐]
+     */
+    private static double[] stealLatency(final Queue queue) throws InterruptedException {
+        final AtomicLong stealNanos = new AtomicLong();
+        final AtomicLong stealCount = new AtomicLong();
+        final AtomicLong stealHit = new AtomicLong();
+        final long totalNanos = ROUND_NANOS * (WARMUP_ROUNDS + MEASURE_ROUNDS);
+        final long measureStart = System.nanoTime() + ROUND_NANOS * WARMUP_ROUNDS;
+        final long end = System.nanoTime() + totalNanos;
+
+        Thread[] thieves = new Thread[THIEF_COUNT];
+        for (int i = 0; i < THIEF_COUNT; i++) {
+            thieves[i] = new Thread(() -> {
+                long nanos = 0;
+                long count = 0;
+                long hit = 0;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    if (queue.size() == 0) {
+                        Thread.yield();
+                        continue;
+                    }
+                    Object item = queue.steal();
+                    long cost = System.nanoTime() - now;
+                    if (now >= measureStart) {
+                        nanos += cost;
+                        count++;
+                        if (item != null) {
+                            hit++;
+                        }
+                    }
+                }
+                stealNanos.addAndGet(nanos);
+                stealCount.addAndGet(count);
+                stealHit.addAndGet(hit);
+            }, "Thief-" + i);
+            thieves[i].start();
+        }
+
+        long ops = 0;
+        long measureNanos = 0;
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            long ownerOps = 0;
+            for (int i = 0; i < 100; i++) {
+                for (int j = 0; j < BATCH_SIZE; j++) {
+                    queue.push(TASK);
+                }
+                while (queue.pop() != null) {
+                    ownerOps++;
+                }
+            }
+            if (now >= measureStart) {
+                ops += ownerOps;
+                measureNanos += System.nanoTime() - now;
+            }
+        }
+
+        for (Thread thief : thieves) {
+            thief.join();
+        }
+
+        long count = Math.max(1, stealCount.get());
+        return new double[]{
+                (double) stealNanos.get() / count,
+                (double) stealHit.get() / count,
+                measureNanos == 0 ? 0 : ops * 1e9 / measureNanos
+        };
+    }
+
+}
@@ -11,7 +11,9 @@ import client.ServerInfo;
 import client.TCPClient;
 import client.UDPSearcher;
 import clink.core.Connector;
+import clink.core.ConnectorConfig;
 import clink.core.IoContext;
+import clink.core.alloc.PooledIoArgsAllocator;
 import clink.impl.stealing.IoStealingSelectorProvider;
 import clink.impl.SchedulerImpl;
 import foo.Foo;
@@ -48,6 +50,15 @@ public class PressureTester {
                 //TODO：性能优化3（多线程任务窃取）
                 .ioProvider(new IoStealingSelectorProvider(3))
                 .scheduler(new SchedulerImpl(1))
+                .ioArgsAllocator(new PooledIoArgsAllocator())
+                .connectorConfig(ConnectorConfig.newBuilder()
+                        .readAhead(true)
+                        .sendBatch(true, 64 * 1024)
+                        .maxConcurrentSendPackets(8)
+                        .compactFrame(1024)
+                        .compress(512, false)
+                        .handshake(true, true)
+                        .build())
                 .start();
 
         // 当前连接数量
@@ -0,0 +1,41 @@
+package tester;
+
+import org.junit.Test;
+
+import clink.core.alloc.AdaptiveReceiveBufferPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveReceiveBufferPolicyTest {
+
+    @Test
+    public void testGrowAndShrink() {
+        AdaptiveReceiveBufferPolicy policy = new AdaptiveReceiveBufferPolicy();
+        assertEquals(256, policy.guess());
+
+        // 持续读满则扩大，直到最大值
+        for (int i = 0; i < 20; i++) {
+            policy.record(policy.guess());
+        }
+        assertEquals(AdaptiveReceiveBufferPolicy.DEFAULT_MAXIMUM, policy.guess());
+
+        // 持续读不满则缩小，直到最小值
+        for (int i = 0; i < 200; i++) {
+            policy.record(10);
+        }
+        assertEquals(AdaptiveReceiveBufferPolicy.DEFAULT_MINIMUM, policy.guess());
+    }
+
+    @Test
+    public void testSingleSmallReadNotShrink() {
+        AdaptiveReceiveBufferPolicy policy = new AdaptiveReceiveBufferPolicy();
+        for (int i = 0; i < 4; i++) {
+            policy.record(policy.guess());
+        }
+        int size = policy.guess();
+        policy.record(1);
+        assertTrue(policy.guess() >= size);
+    }
+
+}
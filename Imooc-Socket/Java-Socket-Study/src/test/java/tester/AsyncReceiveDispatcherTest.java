@@ -0,0 +1,171 @@
+package tester;
+
+import org.junit.Test;
+
+import clink.box.BytesReceivePacket;
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.core.ReceiveDispatcher;
+import clink.core.ReceivePacket;
+import clink.core.Receiver;
+import clink.core.alloc.FixedReceiveBufferPolicy;
+import clink.core.alloc.PooledIoArgsAllocator;
+import clink.impl.async.AsyncReceiveDispatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncReceiveDispatcherTest {
+
+    /**
+     * 只记录监听器的接收者，由测试模拟通道的读取
+     */
+    private static class FakeReceiver implements Receiver {
+
+        private IoArgs.IoArgsEventProcessor processor;
+        private boolean isClosed;
+
+        @Override
+        public boolean postReceiveAsync() {
+            return true;
+        }
+
+        @Override
+        public void setReceiveListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastReadTime() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+
+    private static class EmptyCallback implements ReceiveDispatcher.ReceivePacketCallback {
+
+        private int completedCount;
+
+        @Override
+        public void onReceivePacketCompleted(ReceivePacket packet) {
+            completedCount++;
+        }
+
+        @Override
+        public ReceivePacket<?, ?> onArrivedNewPacket(byte type, long length, byte[] headerInfo) {
+            return new BytesReceivePacket(length);
+        }
+
+        @Override
+        public void onRejectPacket(short identifier) {
+        }
+
+        @Override
+        public void onReceivedReject(short identifier) {
+        }
+
+        @Override
+        public void onReceivedHeartbeat() {
+        }
+
+        @Override
+        public void onReceivedHandshake(byte version, int features, int maxFrameLength) {
+        }
+    }
+
+    private static PooledIoArgsAllocator newAllocator() {
+        // 不使用线程缓存，释放后直接回到共享池
+        return new PooledIoArgsAllocator(true, 64 * 1024, 8, 0, PooledIoArgsAllocator.LeakDetection.DISABLED);
+    }
+
+    private static AsyncReceiveDispatcher newDispatcher(FakeReceiver receiver, PooledIoArgsAllocator allocator) {
+        return newDispatcher(receiver, allocator, new EmptyCallback());
+    }
+
+    private static AsyncReceiveDispatcher newDispatcher(FakeReceiver receiver, PooledIoArgsAllocator allocator,
+                                                        EmptyCallback callback) {
+        return new AsyncReceiveDispatcher(receiver, callback, allocator,
+                new FixedReceiveBufferPolicy(1024), true);
+    }
+
+    @Test
+    public void testCloseWhileReading() {
+        FakeReceiver receiver = new FakeReceiver();
+        PooledIoArgsAllocator allocator = newAllocator();
+        AsyncReceiveDispatcher dispatcher = newDispatcher(receiver, allocator);
+        dispatcher.start();
+
+        // 通道正在读取时关闭（如切换为桥接模式），缓冲区不能被其他连接复用
+        IoArgs args = receiver.processor.provideIoArgs();
+        dispatcher.close();
+        assertEquals(0, allocator.getPooledCount());
+        assertNull(receiver.processor.provideIoArgs());
+
+        // 读取结束后释放
+        receiver.processor.onConsumeCompleted(args);
+        assertEquals(1, allocator.getPooledCount());
+    }
+
+    @Test
+    public void testCloseWhileIdle() {
+        FakeReceiver receiver = new FakeReceiver();
+        PooledIoArgsAllocator allocator = newAllocator();
+        AsyncReceiveDispatcher dispatcher = newDispatcher(receiver, allocator);
+        dispatcher.start();
+
+        IoArgs args = receiver.processor.provideIoArgs();
+        receiver.processor.onConsumeFailed(args, new Exception("test"));
+        dispatcher.close();
+        assertEquals(1, allocator.getPooledCount());
+    }
+
+    @Test
+    public void testClosePacketsAfterReading() {
+        FakeReceiver receiver = new FakeReceiver();
+        PooledIoArgsAllocator allocator = newAllocator();
+        EmptyCallback callback = new EmptyCallback();
+        AsyncReceiveDispatcher dispatcher = newDispatcher(receiver, allocator, callback);
+        dispatcher.start();
+
+        // 接收一个 10 字节的包的头帧
+        IoArgs args = receiver.processor.provideIoArgs();
+        byte[] headerFrame = {0, 6, Frame.TYPE_PACKET_HEADER, 0, 1, 0, 0, 0, 0, 0, 10, 0};
+        args.readFrom(headerFrame, 0, headerFrame.length);
+        receiver.processor.onConsumeCompleted(args);
+        assertEquals(1, dispatcher.getReceivingPacketCount());
+
+        // 其他线程在读取期间关闭，由读取线程在读取结束后结束正在接收的包
+        args = receiver.processor.provideIoArgs();
+        dispatcher.close();
+        assertEquals(0, callback.completedCount);
+        receiver.processor.onConsumeFailed(args, new Exception("test"));
+        assertEquals(1, callback.completedCount);
+        assertEquals(0, dispatcher.getReceivingPacketCount());
+        assertEquals(1, allocator.getPooledCount());
+    }
+
+    @Test
+    public void testInvalidFrameClosesConnection() {
+        FakeReceiver receiver = new FakeReceiver();
+        PooledIoArgsAllocator allocator = newAllocator();
+        AsyncReceiveDispatcher dispatcher = newDispatcher(receiver, allocator);
+        dispatcher.start();
+
+        // 标识的最高位被使用，不能在接收线程中抛出异常，只关闭当前连接
+        IoArgs args = receiver.processor.provideIoArgs();
+        byte[] frame = {0, 0, Frame.TYPE_COMMAND_SEND_CANCEL, 0, 1, (byte) 0x80};
+        args.readFrom(frame, 0, frame.length);
+        receiver.processor.onConsumeCompleted(args);
+        assertTrue(receiver.isClosed);
+
+        // 连接关闭时接收调度器随之关闭，缓冲区已经交还
+        dispatcher.close();
+        assertEquals(1, allocator.getPooledCount());
+    }
+
+}
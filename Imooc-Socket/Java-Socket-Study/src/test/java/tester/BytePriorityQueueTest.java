@@ -0,0 +1,40 @@
+package tester;
+
+import org.junit.Test;
+
+import clink.core.ds.BytePriorityQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BytePriorityQueueTest {
+
+    @Test
+    public void testPriorityOrder() {
+        BytePriorityQueue<String> queue = new BytePriorityQueue<>(4, 100);
+        queue.offer("low", (byte) 0);
+        queue.offer("high1", (byte) 2);
+        queue.offer("high2", (byte) 2);
+        queue.offer("control", (byte) 3);
+        assertEquals("control", queue.poll());
+        assertEquals("high1", queue.poll());
+        assertEquals("high2", queue.poll());
+        assertEquals("low", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testNoStarvation() {
+        BytePriorityQueue<String> queue = new BytePriorityQueue<>(4, 2);
+        queue.offer("low", (byte) 0);
+        for (int i = 0; i < 5; i++) {
+            queue.offer("high", (byte) 2);
+        }
+        assertEquals("high", queue.poll());
+        assertEquals("high", queue.poll());
+        // 高优先级连续出队 2 次后，低优先级出队一次
+        assertEquals("low", queue.poll());
+    }
+
+}
@@ -0,0 +1,138 @@
+package tester;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import clink.box.StringSendPacket;
+import clink.core.ConnectorConfig;
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.core.Sender;
+import clink.core.alloc.UnpooledIoArgsAllocator;
+import clink.impl.async.AsyncSendDispatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HandshakeTest {
+
+    /**
+     * 立即写出全部数据的发送者，记录写出的字节
+     */
+    private static class RecordSender implements Sender {
+
+        private IoArgs.IoArgsEventProcessor processor;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        @Override
+        public boolean postSendAsync() {
+            IoArgs args = processor.provideIoArgs();
+            if (args == null) {
+                return false;
+            }
+            byte[] bytes = new byte[args.remaining()];
+            args.writeTo(bytes, 0);
+            output.write(bytes, 0, bytes.length);
+            processor.onConsumeCompleted(args);
+            return true;
+        }
+
+        @Override
+        public void setSendListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * 解析写出的帧的类型，并清空已记录的数据
+         */
+        List<Byte> takeFrameTypes() {
+            byte[] bytes = output.toByteArray();
+            output.reset();
+            List<Byte> types = new ArrayList<>();
+            int offset = 0;
+            while (offset < bytes.length) {
+                int length = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+                types.add(bytes[offset + 2]);
+                offset += Frame.FRAME_HEADER_LENGTH + length;
+            }
+            return types;
+        }
+    }
+
+    private static AsyncSendDispatcher newDispatcher(Sender sender, boolean isInitiator) {
+        ConnectorConfig config = ConnectorConfig.newBuilder()
+                .compactFrame(100)
+                .handshake(true, isInitiator)
+                .build();
+        return new AsyncSendDispatcher(sender, new UnpooledIoArgsAllocator(), config, null);
+    }
+
+    @Test
+    public void testServerToLegacyClient() {
+        RecordSender sender = new RecordSender();
+        AsyncSendDispatcher dispatcher = newDispatcher(sender, false);
+        dispatcher.send(StringSendPacket.obtain("hello"));
+        dispatcher.sendReject((short) 1);
+        // 旧版本的客户端不握手，服务端只能发送原始的头帧与实体帧，也不能发送拒绝帧
+        List<Byte> types = sender.takeFrameTypes();
+        assertEquals(2, types.size());
+        assertEquals(Frame.TYPE_PACKET_HEADER, (byte) types.get(0));
+        assertEquals(Frame.TYPE_PACKET_ENTITY, (byte) types.get(1));
+    }
+
+    @Test
+    public void testServerRepliesToClientHandshake() {
+        RecordSender sender = new RecordSender();
+        AsyncSendDispatcher dispatcher = newDispatcher(sender, false);
+        dispatcher.onPeerHandshake(Frame.PROTOCOL_VERSION, Frame.FEATURES_SUPPORTED, Frame.MAX_CAPACITY);
+        // 重复的握手不再回复
+        dispatcher.onPeerHandshake(Frame.PROTOCOL_VERSION, Frame.FEATURES_SUPPORTED, Frame.MAX_CAPACITY);
+        dispatcher.send(StringSendPacket.obtain("hello"));
+        List<Byte> types = sender.takeFrameTypes();
+        assertEquals(2, types.size());
+        assertEquals(Frame.TYPE_COMMAND_HANDSHAKE, (byte) types.get(0));
+        assertEquals(Frame.TYPE_PACKET_COMPACT, (byte) types.get(1));
+    }
+
+    @Test
+    public void testClientInitiates() {
+        RecordSender sender = new RecordSender();
+        AsyncSendDispatcher dispatcher = newDispatcher(sender, true);
+        dispatcher.sendHandshake();
+        assertEquals(Frame.TYPE_COMMAND_HANDSHAKE, (byte) sender.takeFrameTypes().get(0));
+        // 收到服务端的回复后不再发送握手
+        dispatcher.onPeerHandshake(Frame.PROTOCOL_VERSION, Frame.FEATURES_SUPPORTED, Frame.MAX_CAPACITY);
+        assertTrue(sender.takeFrameTypes().isEmpty());
+        dispatcher.send(StringSendPacket.obtain("hello"));
+        List<Byte> types = sender.takeFrameTypes();
+        assertEquals(1, types.size());
+        assertEquals(Frame.TYPE_PACKET_COMPACT, (byte) types.get(0));
+    }
+
+    @Test
+    public void testLegacyServerReply() {
+        RecordSender sender = new RecordSender();
+        AsyncSendDispatcher dispatcher = newDispatcher(sender, true);
+        dispatcher.sendHandshake();
+        sender.takeFrameTypes();
+        // 服务端没有回复时继续使用原始的帧格式
+        dispatcher.send(StringSendPacket.obtain("hello"));
+        List<Byte> types = sender.takeFrameTypes();
+        assertFalse(types.contains(Frame.TYPE_PACKET_COMPACT));
+        assertEquals(Frame.TYPE_PACKET_HEADER, (byte) types.get(0));
+    }
+
+}
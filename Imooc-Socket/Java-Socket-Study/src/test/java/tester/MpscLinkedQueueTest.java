@@ -0,0 +1,86 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import clink.core.ds.MpscLinkedQueue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MpscLinkedQueueTest {
+
+    private static class Task extends MpscLinkedQueue.Node {
+        final int id;
+
+        Task(int id) {
+            this.id = id;
+        }
+    }
+
+    @Test
+    public void testOfferOnce() {
+        MpscLinkedQueue<Task> queue = new MpscLinkedQueue<>();
+        Task a = new Task(1);
+        Task b = new Task(2);
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(a));
+        // 已在队列中，不重复添加
+        assertFalse(queue.offer(a));
+        assertTrue(queue.offer(b));
+        assertTrue(a.isQueued());
+
+        assertSame(a, queue.poll());
+        assertFalse(a.isQueued());
+        // 出队之后可以再次入队
+        assertTrue(queue.offer(a));
+        assertSame(b, queue.poll());
+        assertSame(a, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentOffer() throws InterruptedException {
+        final int producerCount = 4;
+        final int taskCount = 64;
+        final int rounds = 20000;
+        final MpscLinkedQueue<Task> queue = new MpscLinkedQueue<>();
+        final Task[] tasks = new Task[producerCount * taskCount];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task(i);
+        }
+        final CountDownLatch latch = new CountDownLatch(producerCount);
+        for (int p = 0; p < producerCount; p++) {
+            final int offset = p * taskCount;
+            new Thread(() -> {
+                // 反复复用同一批任务
+                for (int r = 0; r < rounds; r++) {
+                    for (int i = 0; i < taskCount; i++) {
+                        queue.offer(tasks[offset + i]);
+                    }
+                }
+                latch.countDown();
+            }).start();
+        }
+
+        int[] polled = new int[tasks.length];
+        while (latch.getCount() > 0 || !queue.isEmpty()) {
+            Task task = queue.poll();
+            if (task != null) {
+                polled[task.id]++;
+            }
+        }
+
+        for (Task task : tasks) {
+            assertFalse(task.isQueued());
+            assertTrue(polled[task.id] > 0);
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,107 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.core.IoArgs;
+import clink.core.IoProvider;
+import clink.core.alloc.PooledIoArgsAllocator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PooledIoArgsAllocatorTest {
+
+    @Test
+    public void testSizeClass() {
+        PooledIoArgsAllocator allocator = new PooledIoArgsAllocator();
+        IoArgs small = allocator.allocate(6);
+        IoArgs medium = allocator.allocate(1000);
+        assertEquals(256, small.capacity());
+        assertEquals(1024, medium.capacity());
+        assertTrue(small.isDirect());
+        small.release();
+        medium.release();
+    }
+
+    @Test
+    public void testRecycle() {
+        // 不使用线程缓存，释放后直接回到共享池
+        PooledIoArgsAllocator allocator = new PooledIoArgsAllocator(true, 64 * 1024, 8, 0,
+                PooledIoArgsAllocator.LeakDetection.DISABLED);
+        IoArgs args = allocator.allocate(512);
+        args.release();
+        // 重复释放不应重复归还
+        args.release();
+        assertEquals(1, allocator.getPooledCount());
+        allocator.allocate(300);
+        assertEquals(0, allocator.getPooledCount());
+    }
+
+    @Test
+    public void testLeakDetection() throws InterruptedException {
+        PooledIoArgsAllocator allocator = new PooledIoArgsAllocator(true, 64 * 1024, 8, 0,
+                PooledIoArgsAllocator.LeakDetection.PARANOID);
+        AtomicInteger reportCount = new AtomicInteger();
+        allocator.setLeakReporter((capacity, trace) -> {
+            assertEquals(256, capacity);
+            assertNotNull(trace);
+            reportCount.incrementAndGet();
+        });
+        for (int i = 0; i < 10; i++) {
+            allocator.allocate(256);
+        }
+        for (int i = 0; i < 20 && allocator.getLeakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(50);
+            allocator.allocate(256).release();
+        }
+        assertTrue(allocator.getLeakCount() > 0);
+        assertEquals(allocator.getLeakCount(), reportCount.get());
+    }
+
+    @Test
+    public void testResetLimitToRequestedSize() {
+        PooledIoArgsAllocator allocator = new PooledIoArgsAllocator();
+        IoArgs args = allocator.allocate(300);
+        assertEquals(512, args.capacity());
+        // 读写区间不超过请求的大小，而不是按 2 的幂分配的容量
+        args.limit(1000);
+        args.startWriting();
+        assertEquals(300, args.remaining());
+        args.limit(6);
+        args.resetLimit();
+        args.startWriting();
+        assertEquals(300, args.remaining());
+        args.release();
+    }
+
+    @Test
+    public void testThreadCache() {
+        // 每个线程最多缓存 1024 字节
+        PooledIoArgsAllocator allocator = new PooledIoArgsAllocator(true, 64 * 1024, 8, 16, 1024,
+                PooledIoArgsAllocator.LeakDetection.DISABLED);
+        IoArgs first = allocator.allocate(512);
+        IoArgs second = allocator.allocate(512);
+        IoArgs third = allocator.allocate(512);
+        IoArgs fourth = allocator.allocate(512);
+        // 非 IO 线程释放的缓冲区直接回到共享池
+        first.release();
+        assertEquals(1, allocator.getPooledCount());
+
+        IoProvider.HandleProviderCallback callback = new IoProvider.HandleProviderCallback() {
+            @Override
+            protected void onProviderIo(IoArgs attach) {
+                second.release();
+                third.release();
+                fourth.release();
+            }
+        };
+        callback.run();
+        // 前两个缓冲区留在 IO 线程的缓存中，第三个超过字节数上限，回到共享池
+        assertEquals(2, allocator.getPooledCount());
+    }
+
+}
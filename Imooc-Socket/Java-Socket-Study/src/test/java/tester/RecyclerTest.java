@@ -0,0 +1,90 @@
+package tester;
+
+import org.junit.Test;
+
+import clink.box.StringSendPacket;
+import clink.utils.Recycler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RecyclerTest {
+
+    private static class Item {
+        final Recycler.Handle<Item> handle;
+
+        Item(Recycler.Handle<Item> handle) {
+            this.handle = handle;
+        }
+    }
+
+    private static Recycler<Item> newRecycler(int maxCapacityPerThread) {
+        return new Recycler<Item>(maxCapacityPerThread) {
+            @Override
+            protected Item newObject(Handle<Item> handle) {
+                return new Item(handle);
+            }
+        };
+    }
+
+    private static void runOnOtherThread(Runnable runnable) throws InterruptedException {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        thread.join();
+    }
+
+    @Test
+    public void testRecycleOnOtherThread() throws InterruptedException {
+        Recycler<Item> recycler = newRecycler(4);
+        Item item = recycler.get();
+
+        // 在其他线程回收，回到获取它的线程的池中
+        runOnOtherThread(() -> assertTrue(item.handle.recycle(item)));
+        assertEquals(1, recycler.size());
+        assertSame(item, recycler.get());
+        assertEquals(0, recycler.size());
+    }
+
+    @Test
+    public void testCapacity() throws InterruptedException {
+        Recycler<Item> recycler = newRecycler(2);
+        Item a = recycler.get();
+        Item b = recycler.get();
+        Item c = recycler.get();
+        assertTrue(a.handle.recycle(a));
+        assertTrue(b.handle.recycle(b));
+        assertFalse(c.handle.recycle(c));
+
+        Item d = recycler.get();
+        Item e = recycler.get();
+        runOnOtherThread(() -> {
+            assertTrue(d.handle.recycle(d));
+            assertTrue(e.handle.recycle(e));
+        });
+        assertEquals(2, recycler.size());
+    }
+
+    @Test
+    public void testPacketRecycledOnOtherThread() throws InterruptedException {
+        // 在新的线程上获取，保证池中没有其他测试留下的包
+        StringSendPacket[] packets = new StringSendPacket[2];
+        Thread sender = new Thread(() -> {
+            packets[0] = StringSendPacket.obtain("hello");
+            try {
+                // 发送完成后在 IO 线程回收
+                runOnOtherThread(packets[0]::recycle);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            packets[1] = StringSendPacket.obtain("world");
+        });
+        sender.start();
+        sender.join();
+
+        assertSame(packets[0], packets[1]);
+        assertEquals(5, packets[1].getLength());
+    }
+
+}
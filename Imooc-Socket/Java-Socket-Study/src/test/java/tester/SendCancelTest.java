@@ -0,0 +1,148 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.box.BytesSendPacket;
+import clink.core.ConnectorConfig;
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.core.Sender;
+import clink.core.alloc.UnpooledIoArgsAllocator;
+import clink.impl.async.AsyncSendDispatcher;
+
+import static org.junit.Assert.assertEquals;
+
+public class SendCancelTest {
+
+    /**
+     * 不主动写出的发送者，由测试模拟每一次写出
+     */
+    private static class ManualSender implements Sender {
+
+        private IoArgs.IoArgsEventProcessor processor;
+        private long writtenLength;
+
+        @Override
+        public boolean postSendAsync() {
+            return true;
+        }
+
+        @Override
+        public void setSendListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+            processor = ioArgsEventProcessor;
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * 填充并写出一次数据
+         *
+         * @return 是否还有数据
+         */
+        boolean writeOnce() {
+            IoArgs args = processor.provideIoArgs();
+            if (args == null) {
+                return false;
+            }
+            writtenLength += args.remaining();
+            processor.onConsumeCompleted(args);
+            return true;
+        }
+    }
+
+    /**
+     * 构建下一帧时会读取包的长度，在此停留，让取消发生在构建下一帧与添加下一帧之间
+     */
+    private static class SlowPacket extends BytesSendPacket {
+
+        private final CountDownLatch building = new CountDownLatch(1);
+        private final AtomicInteger completedCount = new AtomicInteger();
+        private volatile Thread fillThread;
+
+        SlowPacket(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public long getLength() {
+            if (Thread.currentThread() == fillThread) {
+                fillThread = null;
+                building.countDown();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getLength();
+        }
+
+        @Override
+        public void recycle() {
+            completedCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testCancelWhileBuildingNextFrame() throws Exception {
+        ManualSender sender = new ManualSender();
+        AsyncSendDispatcher dispatcher = new AsyncSendDispatcher(sender, new UnpooledIoArgsAllocator(),
+                ConnectorConfig.DEFAULT, null);
+        SlowPacket packet = new SlowPacket(new byte[200 * 1024]);
+        dispatcher.send(packet);
+        // 头帧
+        sender.writeOnce();
+
+        packet.fillThread = Thread.currentThread();
+        Thread canceller = new Thread(() -> {
+            try {
+                packet.building.await();
+                dispatcher.cancel(packet);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        canceller.start();
+        while (packet.building.getCount() > 0 && sender.writeOnce()) {
+            // 写出实体帧，直到开始构建下一帧
+        }
+        canceller.join();
+
+        while (sender.writeOnce()) {
+            // 写出取消帧，以及取消之前已经添加的帧
+        }
+        dispatcher.close();
+        assertEquals(1, packet.completedCount.get());
+    }
+
+    @Test
+    public void testCancelSendsNoPadding() {
+        ManualSender sender = new ManualSender();
+        AsyncSendDispatcher dispatcher = new AsyncSendDispatcher(sender, new UnpooledIoArgsAllocator(),
+                ConnectorConfig.DEFAULT, null);
+        BytesSendPacket packet = new BytesSendPacket(new byte[200 * 1024]);
+        dispatcher.send(packet);
+        // 头帧以及几次实体数据
+        for (int i = 0; i < 4; i++) {
+            sender.writeOnce();
+        }
+        // 非批量发送时实体帧同样缩短到一次写出，取消时处于帧的边界，之后只发送一个取消帧
+        dispatcher.cancel(packet);
+        long writtenLength = sender.writtenLength;
+        while (sender.writeOnce()) {
+            // 写出取消帧
+        }
+        assertEquals(Frame.FRAME_HEADER_LENGTH, sender.writtenLength - writtenLength);
+    }
+
+}
@@ -0,0 +1,62 @@
+package tester;
+
+import org.junit.Test;
+
+import clink.box.BytesSendPacket;
+import clink.core.Frame;
+import clink.core.IoArgs;
+import clink.frame.SendHeaderFrame;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SendHeaderFrameTest {
+
+    /**
+     * 带有额外头部信息的包
+     */
+    private static class HeaderInfoPacket extends BytesSendPacket {
+
+        private final byte[] headerInfo;
+
+        HeaderInfoPacket(byte[] headerInfo) {
+            super(new byte[10]);
+            this.headerInfo = headerInfo;
+        }
+
+        @Override
+        public byte[] headerInfo() {
+            return headerInfo;
+        }
+    }
+
+    private static byte[] fill(SendHeaderFrame frame) throws Exception {
+        IoArgs args = new IoArgs(256);
+        args.startWriting();
+        assertTrue(frame.handle(args));
+        args.finishWriting();
+        byte[] bytes = new byte[args.remaining()];
+        args.writeTo(bytes, 0);
+        return bytes;
+    }
+
+    @Test
+    public void testHeaderInfo() throws Exception {
+        byte[] headerInfo = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        SendHeaderFrame frame = SendHeaderFrame.obtain((short) 1, new HeaderInfoPacket(headerInfo));
+        byte[] bytes = fill(frame);
+        // 帧头 + 长度与类型 + 额外的头部信息
+        assertEquals(Frame.FRAME_HEADER_LENGTH + 6 + headerInfo.length, bytes.length);
+        byte[] tail = new byte[headerInfo.length];
+        System.arraycopy(bytes, bytes.length - tail.length, tail, 0, tail.length);
+        assertArrayEquals(headerInfo, tail);
+        frame.recycle();
+
+        // 复用的帧不带额外的头部信息时恢复最小长度
+        frame = SendHeaderFrame.obtain((short) 2, new HeaderInfoPacket(null));
+        assertEquals(Frame.FRAME_HEADER_LENGTH + 6, fill(frame).length);
+        frame.recycle();
+    }
+
+}
@@ -0,0 +1,141 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import clink.box.StringSendPacket;
+import clink.core.ConnectorConfig;
+import clink.core.IoArgs;
+import clink.core.IoProvider;
+import clink.core.SendOverflowPolicy;
+import clink.core.Sender;
+import clink.core.alloc.UnpooledIoArgsAllocator;
+import clink.impl.async.AsyncSendDispatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SendQueueWatermarkTest {
+
+    /**
+     * 一直不写出数据的发送者，模拟消费很慢的对端
+     */
+    private static class StuckSender implements Sender {
+
+        private boolean isClosed;
+
+        @Override
+        public boolean postSendAsync() {
+            return true;
+        }
+
+        @Override
+        public void setSendListener(IoArgs.IoArgsEventProcessor ioArgsEventProcessor) {
+        }
+
+        @Override
+        public long getLastWriteTime() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+
+    private static AsyncSendDispatcher newDispatcher(Sender sender, SendOverflowPolicy policy, List<Boolean> events) {
+        ConnectorConfig config = ConnectorConfig.newBuilder()
+                .sendQueue(100, 300, policy)
+                .build();
+        return new AsyncSendDispatcher(sender, new UnpooledIoArgsAllocator(), config, null, events::add);
+    }
+
+    private static String message(int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append('a');
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testDropNew() {
+        List<Boolean> events = new ArrayList<>();
+        AsyncSendDispatcher dispatcher = newDispatcher(new StuckSender(), SendOverflowPolicy.DROP_NEW, events);
+        assertTrue(dispatcher.send(StringSendPacket.obtain(message(200))));
+        assertTrue(dispatcher.isWritable());
+        // 可写时总是接收，达到高水位线后变为不可写
+        assertTrue(dispatcher.send(StringSendPacket.obtain(message(200))));
+        assertFalse(dispatcher.isWritable());
+        assertFalse(dispatcher.send(StringSendPacket.obtain(message(10))));
+        assertEquals(1, events.size());
+        assertFalse(events.get(0));
+        assertEquals(1, dispatcher.getOverflowDropCount());
+    }
+
+    @Test
+    public void testCancelRestoresWritability() {
+        List<Boolean> events = new ArrayList<>();
+        AsyncSendDispatcher dispatcher = newDispatcher(new StuckSender(), SendOverflowPolicy.DROP_NEW, events);
+        // 第一个包开始发送后一直没有完成，第二个包留在队列中
+        dispatcher.send(StringSendPacket.obtain(message(50)));
+        StringSendPacket queued = StringSendPacket.obtain(message(300));
+        dispatcher.send(queued);
+        assertFalse(dispatcher.isWritable());
+        // 取消队列中的包后降到低水位线以下
+        dispatcher.cancel(queued);
+        assertTrue(dispatcher.isWritable());
+        assertEquals(2, events.size());
+        assertTrue(events.get(1));
+    }
+
+    @Test
+    public void testCancelUnsentHeader() {
+        List<Boolean> events = new ArrayList<>();
+        AsyncSendDispatcher dispatcher = newDispatcher(new StuckSender(), SendOverflowPolicy.BLOCK, events);
+        // 包已经交给 reader，头帧还没有写出
+        StringSendPacket packet = StringSendPacket.obtain(message(400));
+        dispatcher.send(packet);
+        assertFalse(dispatcher.isWritable());
+        // 完美取消头帧时同样要结束该包，否则一直不可写
+        dispatcher.cancel(packet);
+        assertTrue(dispatcher.isWritable());
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testBlockInIoCallback() throws Exception {
+        AsyncSendDispatcher dispatcher = newDispatcher(new StuckSender(), SendOverflowPolicy.BLOCK, new ArrayList<>());
+        dispatcher.send(StringSendPacket.obtain(message(400)));
+        assertFalse(dispatcher.isWritable());
+        // 模拟收到消息时在 IO 线程中直接回复，不能阻塞
+        boolean[] result = {true};
+        IoProvider.HandleProviderCallback callback = new IoProvider.HandleProviderCallback() {
+            @Override
+            protected void onProviderIo(IoArgs attach) {
+                result[0] = dispatcher.send(StringSendPacket.obtain(message(10)));
+            }
+        };
+        Thread ioThread = new Thread(callback);
+        ioThread.start();
+        ioThread.join(2000);
+        assertFalse(ioThread.isAlive());
+        assertFalse(result[0]);
+        assertEquals(1, dispatcher.getOverflowDropCount());
+        dispatcher.close();
+    }
+
+    @Test
+    public void testClose() {
+        StuckSender sender = new StuckSender();
+        AsyncSendDispatcher dispatcher = newDispatcher(sender, SendOverflowPolicy.CLOSE, new ArrayList<>());
+        dispatcher.send(StringSendPacket.obtain(message(400)));
+        assertFalse(dispatcher.send(StringSendPacket.obtain(message(10))));
+        assertTrue(sender.isClosed);
+    }
+
+}
@@ -0,0 +1,68 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import clink.core.ds.SlotTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SlotTableTest {
+
+    @Test
+    public void testPutAndRemove() {
+        SlotTable<String> table = new SlotTable<>(256);
+        assertNull(table.put(1, "a"));
+        assertNull(table.put(255, "b"));
+        assertEquals("a", table.get(1));
+        assertEquals(2, table.size());
+
+        assertEquals("a", table.remove(1));
+        assertNull(table.remove(1));
+        assertNull(table.get(1));
+        assertEquals(1, table.size());
+        assertEquals(2, table.peakSize());
+        assertEquals(2, table.totalOccupied());
+    }
+
+    @Test
+    public void testForEachAndClear() {
+        SlotTable<String> table = new SlotTable<>(8);
+        table.put(3, "c");
+        table.put(5, "e");
+        List<String> items = new ArrayList<>();
+        table.forEach(items::add);
+        assertEquals(2, items.size());
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get(3));
+    }
+
+    @Test
+    public void testLargeCapacity() {
+        SlotTable<String> table = new SlotTable<>(Short.MAX_VALUE + 1);
+        assertNull(table.get(300));
+        assertNull(table.remove(300));
+        table.put(1, "a");
+        table.put(Short.MAX_VALUE, "z");
+        assertEquals("z", table.get(Short.MAX_VALUE));
+        assertNull(table.get(Short.MAX_VALUE - 1));
+
+        List<String> items = new ArrayList<>();
+        table.forEach(items::add);
+        assertEquals(2, items.size());
+        assertEquals("z", table.remove(Short.MAX_VALUE));
+        assertEquals(1, table.size());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void testOutOfCapacity() {
+        SlotTable<String> table = new SlotTable<>(8);
+        table.put(8, "x");
+    }
+
+}
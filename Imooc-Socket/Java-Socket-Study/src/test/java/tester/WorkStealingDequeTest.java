@@ -0,0 +1,89 @@
+package tester;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import clink.core.ds.WorkStealingDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WorkStealingDequeTest {
+
+    @Test
+    public void testPopAndSteal() {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>(2);
+        for (int i = 0; i < 10; i++) {
+            deque.push(i);
+        }
+        assertEquals(10, deque.size());
+        assertTrue(deque.capacity() >= 10);
+
+        // 拥有者后进先出，窃取者先进先出
+        assertEquals(Integer.valueOf(9), deque.pop());
+        assertEquals(Integer.valueOf(0), deque.steal());
+        assertEquals(Integer.valueOf(8), deque.pop());
+        assertEquals(Integer.valueOf(1), deque.steal());
+        assertEquals(6, deque.size());
+
+        while (deque.pop() != null) {
+            // 清空
+        }
+        assertTrue(deque.isEmpty());
+        assertNull(deque.steal());
+
+        deque.push(100);
+        assertEquals(Integer.valueOf(100), deque.steal());
+        assertNull(deque.pop());
+    }
+
+    @Test
+    public void testConcurrentSteal() throws InterruptedException {
+        final int count = 200000;
+        final int thiefCount = 3;
+        final WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        final Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicated = new AtomicInteger();
+        final CountDownLatch ownerDone = new CountDownLatch(1);
+        final CountDownLatch thievesDone = new CountDownLatch(thiefCount);
+
+        for (int i = 0; i < thiefCount; i++) {
+            new Thread(() -> {
+                while (ownerDone.getCount() > 0 || !deque.isEmpty()) {
+                    Integer item = deque.steal();
+                    if (item != null && !taken.add(item)) {
+                        duplicated.incrementAndGet();
+                    }
+                }
+                thievesDone.countDown();
+            }).start();
+        }
+
+        Set<Integer> ownerTaken = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            deque.push(i);
+            if (i % 3 == 0) {
+                Integer item = deque.pop();
+                if (item != null) {
+                    ownerTaken.add(item);
+                }
+            }
+        }
+        ownerDone.countDown();
+        thievesDone.await();
+
+        // 每个元素恰好被取走一次
+        assertEquals(0, duplicated.get());
+        for (Integer item : ownerTaken) {
+            assertTrue(taken.add(item));
+        }
+        assertEquals(count, taken.size());
+    }
+
+}